@@ -12,38 +12,154 @@
  */
 package org.openhab.binding.mercuryenergymeter.discovery;
 
+import static org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterBindingConstants.*;
+
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
-import org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterBindingConstants;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterBridgeHandler;
+import org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterMetadata;
 import org.openhab.core.config.discovery.AbstractDiscoveryService;
-import org.openhab.core.config.discovery.DiscoveryService;
-import org.osgi.service.component.annotations.Component;
+import org.openhab.core.config.discovery.DiscoveryResult;
+import org.openhab.core.config.discovery.DiscoveryResultBuilder;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.ThingStatus;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.ThingHandler;
+import org.openhab.core.thing.binding.ThingHandlerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Discovery service for mercurypowermeter
+ * Discovery service for mercurypowermeter. Every bridge has its own instance, which probes the network addresses
+ * 1-240 on its bus one after another, so buses are scanned in parallel. Energy meters which answer the probe are read
+ * for their serial number and reported with their network address. The serial number represents the energy meter,
+ * as network addresses repeat on different buses.
  *
  * @author Petr Shatsillo - Initial contribution
  *
  */
-@Component(service = DiscoveryService.class, configurationPid = "discovery.mercurypowermeter")
 @NonNullByDefault
-public class MercuryEnergyMeterDiscoveryService extends AbstractDiscoveryService {
+public class MercuryEnergyMeterDiscoveryService extends AbstractDiscoveryService implements ThingHandlerService {
     private final Logger logger = LoggerFactory.getLogger(MercuryEnergyMeterDiscoveryService.class);
+    /**
+     * Expected scan duration in seconds until the bridge is known, then it is calculated from the probe time of
+     * the bus
+     */
+    private static final int SCAN_TIMEOUT = 60;
+    private static final int FIRST_ADDRESS = 1;
+    private static final int LAST_ADDRESS = 240;
+    /**
+     * Factory password of level 1, serial number of energy meters with another password stays unknown
+     */
+    private static final int DEFAULT_PASSWORD = 111111;
+
+    private @Nullable MercuryEnergyMeterBridgeHandler bridgeHandler;
+    private volatile boolean scanning;
 
     public MercuryEnergyMeterDiscoveryService() {
-        super(Collections.singleton(MercuryEnergyMeterBindingConstants.MERCURY_POWERMETER_THING), 30, true);
+        super(Collections.singleton(MERCURY_POWERMETER_THING), SCAN_TIMEOUT, true);
     }
 
     @Override
-    protected void startScan() {
+    public void setThingHandler(ThingHandler handler) {
+        if (handler instanceof MercuryEnergyMeterBridgeHandler) {
+            bridgeHandler = (MercuryEnergyMeterBridgeHandler) handler;
+        }
+    }
+
+    @Override
+    public @Nullable ThingHandler getThingHandler() {
+        return bridgeHandler;
+    }
+
+    /**
+     * Expected duration of the scan, the probes of all addresses. The scan is not stopped when it runs longer
+     * because of polling, it finishes on its own after the last address, so no energy meter is removed unprobed.
+     */
+    @Override
+    public int getScanTimeout() {
+        MercuryEnergyMeterBridgeHandler handler = bridgeHandler;
+        if (handler == null) {
+            return SCAN_TIMEOUT;
+        }
+        long probes = LAST_ADDRESS - FIRST_ADDRESS + 1;
+        return (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(probes * handler.getProbeTime()) + 1);
+    }
+
+    @Override
+    public void activate() {
+        super.activate(null);
+    }
+
+    @Override
+    public void deactivate() {
+        scanning = false;
+        super.deactivate();
     }
 
     @Override
-    protected synchronized void stopScan() {
-        super.stopScan();
+    protected void startScan() {
+        MercuryEnergyMeterBridgeHandler handler = bridgeHandler;
+        if (handler == null || handler.getThing().getStatus() != ThingStatus.ONLINE) {
+            logger.debug("Bridge is not online, skipping scan");
+            return;
+        }
+        if (scanning) {
+            return;
+        }
+        scanning = true;
+        scan(handler, FIRST_ADDRESS, System.nanoTime(), new AtomicInteger());
+    }
+
+    /**
+     * Probes one address and continues with the next one when the probe is finished. Only one probe per bus is
+     * queued at a time, so polling of known energy meters goes on during the scan.
+     */
+    private void scan(MercuryEnergyMeterBridgeHandler handler, int address, long startedAt, AtomicInteger found) {
+        if (!scanning || address > LAST_ADDRESS) {
+            logger.debug("Scan of {} finished in {} ms, found {} energy meters", handler.getThing().getUID(),
+                    (System.nanoTime() - startedAt) / 1000000, found.get());
+            if (scanning) {
+                scanning = false;
+                removeOlderResults(getTimestampOfLastScan());
+                stopScan();
+            }
+            return;
+        }
+        handler.probe(address).thenCompose(answered -> {
+            if (!answered) {
+                return CompletableFuture.completedFuture(null);
+            }
+            found.incrementAndGet();
+            return MercuryEnergyMeterMetadata.readSerialNumber(handler, address, DEFAULT_PASSWORD)
+                    .thenAccept(serialNumber -> thingDiscovered(handler, address, serialNumber));
+        }).whenComplete((result, e) -> {
+            if (e != null) {
+                logger.debug("Probe of address {} failed: {}", address, e.getMessage());
+            }
+            scan(handler, address + 1, startedAt, found);
+        });
+    }
+
+    private void thingDiscovered(MercuryEnergyMeterBridgeHandler handler, int address, String serialNumber) {
+        logger.debug("Found energy meter with network address {}, serial number {}", address, serialNumber);
+        ThingUID bridgeUID = handler.getThing().getUID();
+        ThingUID thingUID = new ThingUID(MERCURY_POWERMETER_THING, bridgeUID, "meter" + address);
+        DiscoveryResultBuilder builder = DiscoveryResultBuilder.create(thingUID).withBridge(bridgeUID)
+                .withProperty(PROPERTY_NETWORK_ADDRESS, address)
+                .withRepresentationProperty(Thing.PROPERTY_SERIAL_NUMBER);
+        String label = "Mercury energy meter " + address;
+        if (!serialNumber.isEmpty()) {
+            builder.withProperty(Thing.PROPERTY_SERIAL_NUMBER, serialNumber);
+            label += " (" + serialNumber + ")";
+        }
+        DiscoveryResult result = builder.withLabel(label).build();
+        thingDiscovered(result);
     }
 
     @Override
@@ -12,14 +12,28 @@
  */
 package org.openhab.binding.mercuryenergymeter.internal;
 
-import java.nio.ByteBuffer;
+import static org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterBindingConstants.*;
+
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterProfileReader.Record;
+import org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterSampleBuffer.Aggregate;
+import org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterTransaction.Priority;
+import org.openhab.core.i18n.TimeZoneProvider;
+import org.openhab.core.library.types.DateTimeType;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.thing.Bridge;
 import org.openhab.core.thing.Channel;
@@ -27,8 +41,10 @@ import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.ThingStatus;
 import org.openhab.core.thing.ThingStatusDetail;
+import org.openhab.core.thing.ThingStatusInfo;
 import org.openhab.core.thing.binding.BaseThingHandler;
 import org.openhab.core.types.Command;
+import org.openhab.core.types.RefreshType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,348 +58,934 @@ import org.slf4j.LoggerFactory;
 public class MercuryEnergyMeter203tdHandler extends BaseThingHandler {
     private final Logger logger = LoggerFactory.getLogger(MercuryEnergyMeter203tdHandler.class);
 
+    private static final int MAX_RETRIES = 2;
+    private static final int CHANNEL_COUNT = MercuryEnergyMeterChannel.values().length;
+    /**
+     * Samples of instantaneous values are kept in memory at least this long for aggregates and queries
+     */
+    private static final int HISTORY_SECONDS = 900;
+    /**
+     * Longest pause between attempts to learn the network address
+     */
+    private static final long MAX_STARTUP_BACKOFF = 300;
+    /**
+     * Pause before the cached metadata is checked again when the energy meter did not answer
+     */
+    private static final long VALIDATION_RETRY = 60;
+    /**
+     * Rejections in a row before a request is no longer sent, a single one may come from a disturbed session
+     */
+    private static final int MAX_REJECTIONS = 3;
+    /**
+     * Pause in seconds before the first read of the power profile, so it follows the first instantaneous read and
+     * does not wait for a whole poll period
+     */
+    private static final long PROFILE_STARTUP_DELAY = 10;
+
     private @Nullable ScheduledFuture<?> pollingTask;
+    private @Nullable ScheduledFuture<?> energyPollingTask;
+    private @Nullable ScheduledFuture<?> profilePollingTask;
+    private @Nullable ScheduledFuture<?> aggregationTask;
+    private @Nullable ScheduledFuture<?> startTask;
+    private volatile boolean started;
     int poll;
+    int energyPoll;
+    int profilePoll;
+    int aggregationWindow;
+    int plausibilityLimit;
+    boolean snapshot;
     int pass;
     int serno;
     @Nullable
-    MercuryEnergyMeterRS485BridgeHandler bridgeHandler;
+    MercuryEnergyMeterBridgeHandler bridgeHandler;
+    private final Set<MercuryEnergyMeterChannel> linkedChannels = EnumSet.noneOf(MercuryEnergyMeterChannel.class);
+    /**
+     * Channels linked to items themselves, not only through their aggregates
+     */
+    private final Set<MercuryEnergyMeterChannel> linkedStates = EnumSet.noneOf(MercuryEnergyMeterChannel.class);
+    /**
+     * Channels whose requests the energy meter rejected repeatedly, they are not read again until the thing is
+     * initialized again
+     */
+    private final Set<MercuryEnergyMeterChannel> unsupported = EnumSet.noneOf(MercuryEnergyMeterChannel.class);
+    private final Map<MercuryEnergyMeterChannel, Integer> rejections = new ConcurrentHashMap<>();
+    private volatile List<MercuryEnergyMeterRead> reads = List.of();
+    private volatile List<MercuryEnergyMeterRead> energyReads = List.of();
+    private volatile List<MercuryEnergyMeterRead> fixedReads = List.of();
+    /**
+     * Last published raw values and their time per channel, indexed by {@link MercuryEnergyMeterChannel#ordinal()}
+     */
+    private final boolean[] published = new boolean[CHANNEL_COUNT];
+    private final long[] publishedValues = new long[CHANNEL_COUNT];
+    private final long[] publishedAt = new long[CHANNEL_COUNT];
+    /**
+     * Factor to the primary side of the instrument transformers per channel, indexed by
+     * {@link MercuryEnergyMeterChannel#ordinal()}
+     */
+    private final long[] ratios = new long[CHANNEL_COUNT];
+    private final long[] deadbands = new long[CHANNEL_COUNT];
+    private final double[] deadbandPercents = new double[CHANNEL_COUNT];
+    /**
+     * State of the spike filter per channel, indexed by {@link MercuryEnergyMeterChannel#ordinal()}
+     */
+    private final boolean[] plausible = new boolean[CHANNEL_COUNT];
+    private final long[] plausibleValues = new long[CHANNEL_COUNT];
+    private final boolean[] suspect = new boolean[CHANNEL_COUNT];
+    private final long[] suspectValues = new long[CHANNEL_COUNT];
+    long maxSilence;
+    /**
+     * Recent raw samples of linked instantaneous values, indexed by {@link MercuryEnergyMeterChannel#ordinal()}
+     */
+    private final @Nullable MercuryEnergyMeterSampleBuffer[] samples =
+            new MercuryEnergyMeterSampleBuffer[CHANNEL_COUNT];
+    private volatile Set<String> linkedAggregates = Set.of();
+    private volatile CompletableFuture<Void> pollCycle = CompletableFuture.completedFuture(null);
+    private volatile CompletableFuture<Void> energyCycle = CompletableFuture.completedFuture(null);
+    private volatile CompletableFuture<Void> profileCycle = CompletableFuture.completedFuture(null);
+    private @Nullable MercuryEnergyMeterProfileReader profileReader;
+    private volatile MercuryEnergyMeterMetadata metadata = MercuryEnergyMeterMetadata.fromProperties(Map.of());
+    private @Nullable ScheduledFuture<?> validationTask;
+    private final TimeZoneProvider timeZoneProvider;
+    private volatile boolean disposed;
 
-    public MercuryEnergyMeter203tdHandler(Thing thing) {
+    public MercuryEnergyMeter203tdHandler(Thing thing, TimeZoneProvider timeZoneProvider) {
         super(thing);
+        this.timeZoneProvider = timeZoneProvider;
     }
 
     @Override
     public void initialize() {
         MercuryEnergyMeterConfiguration config = getConfigAs(MercuryEnergyMeterConfiguration.class);
-        bridgeHandler = getBridgeHandler();
         pass = config.userpassword;
         poll = config.pollPeriod;
-        scheduler.execute(this::getserial);
+        energyPoll = config.energyPollPeriod;
+        profilePoll = config.profilePollPeriod;
+        aggregationWindow = config.aggregationWindow;
+        profileReader = null;
+        plausibilityLimit = config.plausibilityLimit;
+        Arrays.fill(plausible, false);
+        Arrays.fill(suspect, false);
+        clearLinkedStates();
+        maxSilence = TimeUnit.SECONDS.toNanos(config.maxSilence);
+        disposed = false;
+        serno = config.networkAddress > 0 ? config.networkAddress : getCachedAddress();
+        metadata = MercuryEnergyMeterMetadata.fromProperties(getThing().getProperties());
+        updateRatios(metadata);
+        clearUnsupported();
+        snapshot = config.snapshot;
         updateStatus(ThingStatus.UNKNOWN, ThingStatusDetail.NONE, "Waiting for energy meter serial number");
+        start();
     }
 
-    private void getserial() {
-        logger.debug("getserial");
-        int[] data = new int[] { 0x00, 0x08, 0x05 }; // Getting network address
+    /**
+     * Starts polling once the bridge is online, nothing here waits for the bus
+     */
+    private synchronized void start() {
+        MercuryEnergyMeterBridgeHandler bridge = getBridgeHandler();
+        bridgeHandler = bridge;
+        if (bridge == null) {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.BRIDGE_UNINITIALIZED, "Bridge is not set up");
+            return;
+        }
+        if (bridge.getThing().getStatus() != ThingStatus.ONLINE) {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.BRIDGE_OFFLINE);
+            return;
+        }
+        started = true;
+        if (serno > 0) {
+            startPolling();
+            validateMetadata();
+        } else {
+            learnAddress(0);
+        }
+    }
+
+    @Override
+    public void bridgeStatusChanged(ThingStatusInfo bridgeStatusInfo) {
+        if (disposed) {
+            return;
+        }
+        if (bridgeStatusInfo.getStatus() == ThingStatus.ONLINE) {
+            if (!started) {
+                start();
+            }
+        } else {
+            stop();
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.BRIDGE_OFFLINE);
+        }
+    }
 
-        int trytoget = 0;
-        while (serno == 0) {
-            serno = bridgeHandler.sendPacket(data, 4, pass)[2];
-            if (trytoget > 4) {
-                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.HANDLER_INITIALIZING_ERROR,
-                        "Cannot get network address");
-                break;
+    /**
+     * Learns the network address by broadcast, which works only with a single energy meter on the bus. Failed
+     * attempts are repeated with exponential backoff on the scheduler instead of a sleeping thread.
+     */
+    private void learnAddress(int attempt) {
+        MercuryEnergyMeterBridgeHandler bridge = bridgeHandler;
+        if (bridge == null || !started) {
+            return;
+        }
+        int[] data = new int[] { 0x00, 0x08, 0x05 }; // Getting network address
+        // address, 0x00, address and CRC
+        bridge.submit(data, 5, pass, Priority.NORMAL).whenComplete((answer, e) -> {
+            int address = e == null && MercuryEnergyMeterCodec.isValid(answer, 5) ? answer[2] & 0xFF : 0;
+            synchronized (this) {
+                if (!started) {
+                    return;
+                }
+                if (address != 0) {
+                    serno = address;
+                    updateProperty(PROPERTY_NETWORK_ADDRESS, Integer.toString(address));
+                    startPolling();
+                    validateMetadata();
+                    return;
+                }
+                long delay = Math.min(1L << Math.min(attempt, 16), MAX_STARTUP_BACKOFF);
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
+                        "Cannot get network address, next attempt in " + delay + " s");
+                startTask = scheduler.schedule(() -> learnAddress(attempt + 1), delay, TimeUnit.SECONDS);
             }
-            trytoget++;
+        });
+    }
+
+    /**
+     * Cancels polling and the pending start attempt, requests already queued on the bus run out
+     */
+    private synchronized void stop() {
+        started = false;
+        pollingTask = cancel(pollingTask);
+        energyPollingTask = cancel(energyPollingTask);
+        aggregationTask = cancel(aggregationTask);
+        profilePollingTask = cancel(profilePollingTask);
+        startTask = cancel(startTask);
+        validationTask = cancel(validationTask);
+    }
+
+    /**
+     * Network address learned by broadcast before the restart, 0 if there is none
+     */
+    private int getCachedAddress() {
+        String property = getThing().getProperties().get(PROPERTY_NETWORK_ADDRESS);
+        if (property != null) {
             try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
+                int address = Integer.parseInt(property);
+                if (address > 0 && address <= 240) {
+                    return address;
+                }
+            } catch (NumberFormatException e) {
+                logger.debug("Ignoring invalid cached network address {}", property);
             }
         }
-        if (serno != 0) {
-            if (poll > 0) {
-                pollingTask = scheduler.scheduleWithFixedDelay(this::poll, 0, poll, TimeUnit.SECONDS);
-            } else {
-                pollingTask = null;
+        return 0;
+    }
+
+    /**
+     * Checks the cached metadata against the energy meter after polling has started, so a restart does not wait for
+     * the bus. Only the serial number is read when the cache is complete, otherwise only the missing values. Another
+     * serial number means the energy meter was replaced: the profile cursor is dropped and all metadata is read
+     * again.
+     */
+    private void validateMetadata() {
+        MercuryEnergyMeterBridgeHandler bridge = bridgeHandler;
+        if (bridge == null) {
+            return;
+        }
+        int address = serno;
+        MercuryEnergyMeterMetadata.readSerialNumber(bridge, address, pass).thenCompose(serialNumber -> {
+            MercuryEnergyMeterMetadata known;
+            synchronized (this) {
+                if (!started || address != serno) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                MercuryEnergyMeterMetadata cached = metadata;
+                if (serialNumber.isEmpty()) {
+                    validationTask = scheduler.schedule(this::validateMetadata, VALIDATION_RETRY, TimeUnit.SECONDS);
+                    return CompletableFuture.completedFuture(null);
+                }
+                if (serialNumber.equals(cached.serialNumber) && cached.isComplete()) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                if (!cached.serialNumber.isEmpty() && !serialNumber.equals(cached.serialNumber)) {
+                    logger.info("Energy meter at address {} was replaced, serial number {} instead of {}", address,
+                            serialNumber, cached.serialNumber);
+                    profileReader = null;
+                    unsupported.clear();
+                    updateProperty(PROPERTY_PROFILE_CURSOR, null);
+                    updateProperty(PROPERTY_UNSUPPORTED_CHANNELS, null);
+                }
+                known = serialNumber.equals(cached.serialNumber) ? cached
+                        : new MercuryEnergyMeterMetadata(serialNumber, "", 0, 0, 0);
+            }
+            return MercuryEnergyMeterMetadata.read(bridge, address, pass, known).thenAccept(this::updateMetadata);
+        }).whenComplete((result, e) -> {
+            if (e != null) {
+                logger.debug("Cannot validate metadata of address {}: {}", address, e.getMessage());
+            }
+        });
+    }
+
+    private synchronized void updateMetadata(MercuryEnergyMeterMetadata read) {
+        if (!started) {
+            return;
+        }
+        logger.debug("Energy meter at address {} has {}", serno, read);
+        metadata = read;
+        if (updateRatios(read)) {
+            // the first value with new ratios is not a spike
+            Arrays.fill(plausible, false);
+            Arrays.fill(suspect, false);
+        }
+        Map<String, String> properties = editProperties();
+        read.toProperties(properties);
+        updateProperties(properties);
+        // updateProperties() only adds and changes, properties of unknown values are removed one by one
+        for (String key : MercuryEnergyMeterMetadata.PROPERTIES) {
+            if (!properties.containsKey(key) && getThing().getProperties().containsKey(key)) {
+                updateProperty(key, null);
+            }
+        }
+        // the variant may rule out some of the linked channels
+        updateReads();
+    }
+
+    /**
+     * The energy meter measures on the secondary side of the instrument transformers, values are published on the
+     * primary side
+     *
+     * @return true if a ratio changed
+     */
+    private synchronized boolean updateRatios(MercuryEnergyMeterMetadata meter) {
+        boolean changed = false;
+        for (MercuryEnergyMeterChannel channel : MercuryEnergyMeterChannel.values()) {
+            long ratio = channel.ratio(meter.voltageRatio, meter.currentRatio);
+            changed |= ratios[channel.ordinal()] != ratio;
+            ratios[channel.ordinal()] = ratio;
+        }
+        return changed;
+    }
+
+    /**
+     * After initialization every linked channel gets the next value regardless of deadband
+     */
+    private synchronized void clearLinkedStates() {
+        linkedStates.clear();
+        Arrays.fill(published, false);
+    }
+
+    /**
+     * Every initialization asks the energy meter again for the channels it rejected before
+     */
+    private synchronized void clearUnsupported() {
+        unsupported.clear();
+        rejections.clear();
+        if (getThing().getProperties().containsKey(PROPERTY_UNSUPPORTED_CHANNELS)) {
+            updateProperty(PROPERTY_UNSUPPORTED_CHANNELS, null);
+        }
+    }
+
+    /**
+     * A valid answer resets the count of rejections in a row
+     */
+    private void markSupported(MercuryEnergyMeterRead read) {
+        if (!rejections.isEmpty()) {
+            for (MercuryEnergyMeterChannel channel : read.channels) {
+                rejections.remove(channel);
+            }
+        }
+    }
+
+    /**
+     * Counts the rejection of a request. After {@link #MAX_REJECTIONS} in a row its channels are listed in the thing
+     * properties and the reads are planned without them.
+     */
+    private synchronized void markUnsupported(MercuryEnergyMeterRead read) {
+        boolean changed = false;
+        for (MercuryEnergyMeterChannel channel : read.channels) {
+            // a rejected multi-phase request says nothing about the single ones
+            if (!read.isOwnRequest(channel) || rejections.merge(channel, 1, Integer::sum) < MAX_REJECTIONS) {
+                continue;
+            }
+            rejections.remove(channel);
+            if (unsupported.add(channel)) {
+                logger.info("Energy meter at address {} does not support {}", serno, channel.id);
+                changed = true;
             }
-            updateStatus(ThingStatus.ONLINE, ThingStatusDetail.NONE, "Network address is " + serno);
         }
+        if (!changed || disposed) {
+            return;
+        }
+        StringBuilder ids = new StringBuilder();
+        for (MercuryEnergyMeterChannel channel : unsupported) {
+            ids.append(ids.length() > 0 ? "," : "").append(channel.id);
+        }
+        updateProperty(PROPERTY_UNSUPPORTED_CHANNELS, ids.toString());
+        scheduler.execute(this::updateReads);
+    }
+
+    private static @Nullable ScheduledFuture<?> cancel(@Nullable ScheduledFuture<?> task) {
+        if (task != null && !task.isCancelled()) {
+            task.cancel(true);
+        }
+        return null;
+    }
+
+    private void startPolling() {
+        updateReads();
+        MercuryEnergyMeterBridgeHandler bridge = bridgeHandler;
+        if (bridge != null && bridge.isFixation()) {
+            // instantaneous values are read after the data fixation of the bridge
+            pollingTask = null;
+        } else if (poll > 0) {
+            pollingTask = scheduler.scheduleWithFixedDelay(this::poll, 0, poll, TimeUnit.SECONDS);
+        } else {
+            pollingTask = null;
+        }
+        if (energyPoll > 0) {
+            // start energy group after the first instantaneous cycle to keep its cadence
+            energyPollingTask = scheduler.scheduleWithFixedDelay(this::pollEnergy, Math.min(poll, energyPoll),
+                    energyPoll, TimeUnit.SECONDS);
+        } else {
+            energyPollingTask = null;
+        }
+        if (aggregationWindow > 0 && poll > 0) {
+            aggregationTask = scheduler.scheduleWithFixedDelay(this::publishAggregates, aggregationWindow,
+                    aggregationWindow, TimeUnit.SECONDS);
+        } else {
+            aggregationTask = null;
+        }
+        if (profilePoll > 0) {
+            profilePollingTask = scheduler.scheduleWithFixedDelay(this::pollProfile,
+                    Math.min(PROFILE_STARTUP_DELAY, profilePoll), profilePoll, TimeUnit.SECONDS);
+        } else {
+            profilePollingTask = null;
+        }
+        updateStatus(ThingStatus.ONLINE, ThingStatusDetail.NONE, "Network address is " + serno);
     }
 
-    private @Nullable MercuryEnergyMeterRS485BridgeHandler getBridgeHandler() {
+    private @Nullable MercuryEnergyMeterBridgeHandler getBridgeHandler() {
         Bridge bridge = getBridge();
         if (bridge != null) {
-            if (bridge.getHandler() instanceof MercuryEnergyMeterRS485BridgeHandler) {
-                return (MercuryEnergyMeterRS485BridgeHandler) bridge.getHandler();
+            if (bridge.getHandler() instanceof MercuryEnergyMeterBridgeHandler) {
+                return (MercuryEnergyMeterBridgeHandler) bridge.getHandler();
             }
         }
         return null;
     }
 
-    private void poll() {
+    @Override
+    public void channelLinked(ChannelUID channelUID) {
+        updateReads();
+    }
+
+    @Override
+    public void channelUnlinked(ChannelUID channelUID) {
+        updateReads();
+    }
+
+    /**
+     * Rebuilds the requests of both poll groups from the linked channels
+     */
+    synchronized void updateReads() {
+        linkedChannels.clear();
+        Set<MercuryEnergyMeterChannel> states = EnumSet.noneOf(MercuryEnergyMeterChannel.class);
+        Set<String> aggregates = new HashSet<>();
         for (Channel channel : getThing().getChannels()) {
-            if (isLinked(channel.getUID().getId())) {
-                if (channel.getUID().getId().equals(MercuryEnergyMeterBindingConstants.CHANNEL_VOLTAGE_1)) {
-                    ArrayList<Float> val = new ArrayList<>();
-                    for (int i = 0; i < 3; i++) {
-                        try {
-                            Thread.sleep(500);
-                        } catch (InterruptedException e) {
-                        }
-                        int[] data = new int[] { serno, 0x08, 0x11, 0x11 };
-                        byte[] pd = bridgeHandler.sendPacket(data, 6, pass);
-                        float AplusTotalnum = ByteBuffer.wrap(new byte[] { 0x00, pd[1], pd[3], pd[2] }).getInt();
-                        val.add(AplusTotalnum);
-                    }
-                    val.remove(Collections.max(val));
-                    val.remove(Collections.min(val));
-                    if (val.get(0) != 0) {
-                        try {
-                            updateState(channel.getUID().getId(),
-                                    DecimalType.valueOf(String.valueOf(val.get(0) / 100)));
-                            logger.debug("Voltage 1 : {}V", val.get(0) / 100);
-                        } catch (Exception ignore) {
-                        }
-                    }
-                } else if (channel.getUID().getId().equals(MercuryEnergyMeterBindingConstants.CHANNEL_VOLTAGE_2)) {
-                    ArrayList<Float> val = new ArrayList<>();
-                    for (int i = 0; i < 3; i++) {
-                        try {
-                            Thread.sleep(500);
-                        } catch (InterruptedException e) {
-                        }
-                        int[] data = new int[] { serno, 0x08, 0x11, 0x12 };
-                        byte[] pd = bridgeHandler.sendPacket(data, 6, pass);
-                        float AplusTotalnum = ByteBuffer.wrap(new byte[] { 0x00, pd[1], pd[3], pd[2] }).getInt();
-                        val.add(AplusTotalnum);
-                    }
-                    val.remove(Collections.max(val));
-                    val.remove(Collections.min(val));
-                    try {
-                        updateState(channel.getUID().getId(), DecimalType.valueOf(String.valueOf(val.get(0) / 100)));
-                        logger.debug("Voltage 2 : {}V", val.get(0) / 100);
-                    } catch (Exception ignore) {
-                    }
-                } else if (channel.getUID().getId().equals(MercuryEnergyMeterBindingConstants.CHANNEL_VOLTAGE_3)) {
-                    ArrayList<Float> val = new ArrayList<>();
-                    for (int i = 0; i < 3; i++) {
-                        try {
-                            Thread.sleep(500);
-                        } catch (InterruptedException e) {
-                        }
-                        int[] data = new int[] { serno, 0x08, 0x11, 0x13 };
-                        byte[] pd = bridgeHandler.sendPacket(data, 6, pass);
-                        float AplusTotalnum = ByteBuffer.wrap(new byte[] { 0x00, pd[1], pd[3], pd[2] }).getInt();
-                        val.add(AplusTotalnum);
-                    }
-                    val.remove(Collections.max(val));
-                    val.remove(Collections.min(val));
-                    try {
-                        updateState(channel.getUID().getId(), DecimalType.valueOf(String.valueOf(val.get(0) / 100)));
-                        logger.debug("Voltage 1 : {}V", val.get(0) / 100);
-                    } catch (Exception ignore) {
-                    }
-                } else if (channel.getUID().getId().equals(MercuryEnergyMeterBindingConstants.CHANNEL_CURRENT_1)) {
-                    ArrayList<Float> val = new ArrayList<>();
-                    for (int i = 0; i < 3; i++) {
-                        try {
-                            Thread.sleep(500);
-                        } catch (InterruptedException e) {
-                        }
-                        int[] data = new int[] { serno, 0x08, 0x11, 0x21 };
-                        byte[] pd = bridgeHandler.sendPacket(data, 6, pass);
-                        float AplusTotalnum = ByteBuffer.wrap(new byte[] { 0x00, pd[1], pd[3], pd[2] }).getInt();
-                        val.add(AplusTotalnum);
-                    }
-                    val.remove(Collections.max(val));
-                    val.remove(Collections.min(val));
-                    try {
-                        if (val.get(0) != 0) {
-                            updateState(channel.getUID().getId(),
-                                    DecimalType.valueOf(String.valueOf(val.get(0) / 1000)));
-                            logger.debug("Current 1 : {}A", val.get(0) / 1000);
-                        }
-                    } catch (Exception ignore) {
-                    }
-                } else if (channel.getUID().getId().equals(MercuryEnergyMeterBindingConstants.CHANNEL_CURRENT_2)) {
-                    ArrayList<Float> val = new ArrayList<>();
-                    for (int i = 0; i < 3; i++) {
-                        try {
-                            Thread.sleep(500);
-                        } catch (InterruptedException e) {
-                        }
-                        int[] data = new int[] { serno, 0x08, 0x11, 0x22 };
-                        byte[] pd = bridgeHandler.sendPacket(data, 6, pass);
-                        float AplusTotalnum = ByteBuffer.wrap(new byte[] { 0x00, pd[1], pd[3], pd[2] }).getInt();
-                        val.add(AplusTotalnum);
-                    }
-                    val.remove(Collections.max(val));
-                    val.remove(Collections.min(val));
-                    try {
-                        updateState(channel.getUID().getId(), DecimalType.valueOf(String.valueOf(val.get(0) / 1000)));
-                        logger.debug("Current 2 : {}A", val.get(0) / 1000);
-                    } catch (Exception ignore) {
-                    }
-                } else if (channel.getUID().getId().equals(MercuryEnergyMeterBindingConstants.CHANNEL_CURRENT_3)) {
-                    ArrayList<Float> val = new ArrayList<>();
-                    for (int i = 0; i < 3; i++) {
-                        try {
-                            Thread.sleep(500);
-                        } catch (InterruptedException e) {
-                        }
-                        int[] data = new int[] { serno, 0x08, 0x11, 0x23 };
-                        byte[] pd = bridgeHandler.sendPacket(data, 6, pass);
-                        float AplusTotalnum = ByteBuffer.wrap(new byte[] { 0x00, pd[1], pd[3], pd[2] }).getInt();
-                        val.add(AplusTotalnum);
-                    }
-                    val.remove(Collections.max(val));
-                    val.remove(Collections.min(val));
-                    try {
-                        updateState(channel.getUID().getId(), DecimalType.valueOf(String.valueOf(val.get(0) / 1000)));
-                        logger.debug("Current 3 : {}A", val.get(0) / 1000);
-                    } catch (Exception ignore) {
-                    }
-                } else if (channel.getUID().getId()
-                        .equals(MercuryEnergyMeterBindingConstants.CHANNEL_ENERGY_ACTIVE_TOTAL)) {
-                    ArrayList<Float> val = new ArrayList<>();
-                    for (int i = 0; i < 3; i++) {
-                        try {
-                            Thread.sleep(500);
-                        } catch (InterruptedException e) {
-                        }
-                        int[] data = new int[] { serno, 0x05, 0x00, 0x00 };
-                        byte[] pd = bridgeHandler.sendPacket(data, 19, pass);
-                        float AplusTotalnum = ByteBuffer.wrap(new byte[] { pd[2], pd[1], pd[4], pd[3] }).getInt();
-                        val.add(AplusTotalnum);
-                    }
-                    val.remove(Collections.max(val));
-                    val.remove(Collections.min(val));
-                    try {
-                        updateState(channel.getUID().getId(), DecimalType.valueOf(String.valueOf(val.get(0) / 1000)));
-                        logger.debug("A+ total: {} kWh", val.get(0) / 1000);
-                    } catch (Exception ignore) {
-                    }
-                } else if (channel.getUID().getId().equals(MercuryEnergyMeterBindingConstants.CHANNEL_ENERGY_1)) {
-                    ArrayList<Float> val = new ArrayList<>();
-                    for (int i = 0; i < 3; i++) {
-                        try {
-                            Thread.sleep(500);
-                        } catch (InterruptedException e) {
-                        }
-                        int[] data = new int[] { serno, 0x05, 0x00, 0x01 };
-                        byte[] pd = bridgeHandler.sendPacket(data, 19, pass);
-                        float AplusTotalnum = ByteBuffer.wrap(new byte[] { pd[2], pd[1], pd[4], pd[3] }).getInt();
-                        val.add(AplusTotalnum);
-                    }
-                    val.remove(Collections.max(val));
-                    val.remove(Collections.min(val));
-                    try {
-                        updateState(channel.getUID().getId(), DecimalType.valueOf(String.valueOf(val.get(0) / 1000)));
-                        logger.debug("A+ T1: {} kWh", val.get(0) / 1000);
-                    } catch (Exception ignore) {
-                    }
-                } else if (channel.getUID().getId().equals(MercuryEnergyMeterBindingConstants.CHANNEL_ENERGY_2)) {
-                    ArrayList<Float> val = new ArrayList<>();
-                    for (int i = 0; i < 3; i++) {
-                        try {
-                            Thread.sleep(500);
-                        } catch (InterruptedException e) {
-                        }
-                        int[] data = new int[] { serno, 0x05, 0x00, 0x02 };
-                        byte[] pd = bridgeHandler.sendPacket(data, 19, pass);
-                        float AplusTotalnum = ByteBuffer.wrap(new byte[] { pd[2], pd[1], pd[4], pd[3] }).getInt();
-                        val.add(AplusTotalnum);
-                    }
-                    val.remove(Collections.max(val));
-                    val.remove(Collections.min(val));
-                    try {
-                        updateState(channel.getUID().getId(), DecimalType.valueOf(String.valueOf(val.get(0) / 1000)));
-                        logger.debug("A+ T2: {} kWh", val.get(0) / 1000);
-                    } catch (Exception ignore) {
-                    }
-                } else if (channel.getUID().getId().equals(MercuryEnergyMeterBindingConstants.CHANNEL_ENERGY_3)) {
-                    ArrayList<Float> val = new ArrayList<>();
-                    for (int i = 0; i < 3; i++) {
-                        try {
-                            Thread.sleep(500);
-                        } catch (InterruptedException e) {
-                        }
-                        int[] data = new int[] { serno, 0x05, 0x00, 0x03 };
-                        byte[] pd = bridgeHandler.sendPacket(data, 19, pass);
-                        float AplusTotalnum = ByteBuffer.wrap(new byte[] { pd[2], pd[1], pd[4], pd[3] }).getInt();
-                        val.add(AplusTotalnum);
-                    }
-                    val.remove(Collections.max(val));
-                    val.remove(Collections.min(val));
-                    try {
-                        updateState(channel.getUID().getId(), DecimalType.valueOf(String.valueOf(val.get(0) / 1000)));
-                        logger.debug("A+ T3: {} kWh", val.get(0) / 1000);
-                    } catch (Exception ignore) {
-                    }
-                } else if (channel.getUID().getId()
-                        .equals(MercuryEnergyMeterBindingConstants.CHANNEL_POWER_ACTIVE_TOTAL)) {
-                    ArrayList<Float> val = new ArrayList<>();
-                    for (int i = 0; i < 3; i++) {
-                        int[] data = new int[] { serno, 0x08, 0x11, 0x00 };
-                        byte[] pd = bridgeHandler.sendPacket(data, 6, pass);
-                        float AplusTotalnum = ByteBuffer.wrap(new byte[] { 0x00, (byte) (pd[1] & 0x3F), pd[3], pd[2] })
-                                .getInt();
-                        val.add(AplusTotalnum);
-                    }
-                    val.remove(Collections.max(val));
-                    val.remove(Collections.min(val));
-                    try {
-                        updateState(channel.getUID().getId(), DecimalType.valueOf(String.valueOf(val.get(0) / 100)));
-                        logger.debug("Power total: {} W", val.get(0) / 100);
-                    } catch (Exception ignore) {
+            String id = channel.getUID().getId();
+            MercuryEnergyMeterChannel aggregated = getAggregated(id);
+            if (aggregated != null && isLinked(channel.getUID())) {
+                // aggregates need the samples even if the channel itself is not linked
+                linkedChannels.add(aggregated);
+                aggregates.add(id);
+                continue;
+            }
+            MercuryEnergyMeterChannel descriptor = MercuryEnergyMeterChannel.fromId(id);
+            if (descriptor != null && isLinked(channel.getUID())) {
+                linkedChannels.add(descriptor);
+                MercuryEnergyMeterChannelConfiguration config = channel.getConfiguration()
+                        .as(MercuryEnergyMeterChannelConfiguration.class);
+                int i = descriptor.ordinal();
+                deadbands[i] = Math.round(Math.abs(config.deadband) * Math.pow(10, descriptor.scale));
+                deadbandPercents[i] = Math.abs(config.deadbandPercent);
+                states.add(descriptor);
+                if (!linkedStates.contains(descriptor)) {
+                    // newly linked items get the next value regardless of deadband
+                    published[i] = false;
+                }
+            }
+        }
+        linkedStates.clear();
+        linkedStates.addAll(states);
+        linkedAggregates = aggregates;
+        List<MercuryEnergyMeterChannel> instant = new ArrayList<>();
+        List<MercuryEnergyMeterChannel> energy = new ArrayList<>();
+        // with data fixation the samples come at the fixation period of the bridge instead of the poll period
+        MercuryEnergyMeterBridgeHandler bridge = bridgeHandler;
+        int period = bridge != null && bridge.isFixation() ? bridge.getFixationPeriod() : poll;
+        int capacity = Math.max(aggregationWindow, HISTORY_SECONDS) / Math.max(period, 1) + 1;
+        MercuryEnergyMeterMetadata meter = metadata;
+        for (MercuryEnergyMeterChannel descriptor : linkedChannels) {
+            if (!meter.supports(descriptor) || unsupported.contains(descriptor)) {
+                logger.debug("{} is not supported by energy meter at address {}, not read", descriptor.id, serno);
+                continue;
+            }
+            (descriptor.energy ? energy : instant).add(descriptor);
+            MercuryEnergyMeterSampleBuffer buffer = samples[descriptor.ordinal()];
+            if (!descriptor.energy && (buffer == null || buffer.capacity() != capacity)) {
+                samples[descriptor.ordinal()] = new MercuryEnergyMeterSampleBuffer(capacity);
+            }
+        }
+        reads = MercuryEnergyMeterRead.plan(serno, instant);
+        energyReads = MercuryEnergyMeterRead.plan(serno, energy);
+        fixedReads = MercuryEnergyMeterRead.planFixed(serno, instant);
+    }
+
+    /**
+     * Reads linked channels of instantaneous values: voltage, current, power. All requests of the cycle are queued
+     * at once without blocking a thread, so the bridge interleaves them with the requests of other energy meters.
+     * In snapshot mode they are sent as one burst instead.
+     */
+    CompletableFuture<Void> poll() {
+        CompletableFuture<Void> previous = pollCycle;
+        if (!previous.isDone()) {
+            logger.debug("Previous poll of address {} is still running", serno);
+            return previous;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Void> reading = snapshot ? readSnapshot(reads) : executeAll(reads);
+        CompletableFuture<Void> cycle = reading.thenRun(() -> {
+            MercuryEnergyMeterBridgeHandler bridge = bridgeHandler;
+            if (bridge != null) {
+                bridge.pollCycle(serno, System.nanoTime() - start);
+                updateReachability(bridge);
+            }
+        });
+        pollCycle = cycle;
+        return cycle;
+    }
+
+    /**
+     * Reads linked energy registers: A+, A-, R+, R- of the total and tariffs
+     */
+    CompletableFuture<Void> pollEnergy() {
+        CompletableFuture<Void> previous = energyCycle;
+        if (!previous.isDone()) {
+            logger.debug("Previous energy poll of address {} is still running", serno);
+            return previous;
+        }
+        CompletableFuture<Void> cycle = executeAll(energyReads).thenRun(() -> {
+            MercuryEnergyMeterBridgeHandler bridge = bridgeHandler;
+            if (bridge != null) {
+                updateReachability(bridge);
+            }
+        });
+        energyCycle = cycle;
+        return cycle;
+    }
+
+    /**
+     * Reads power profile records written since the last pass and publishes them oldest first. The cursor is kept in
+     * the thing properties, so after a restart or an outage the missing records are read in one pass.
+     */
+    CompletableFuture<Void> pollProfile() {
+        CompletableFuture<Void> previous = profileCycle;
+        if (!previous.isDone() || !isProfileLinked()) {
+            return previous;
+        }
+        MercuryEnergyMeterProfileReader reader = getProfileReader();
+        if (reader == null) {
+            return previous;
+        }
+        int cursor = reader.getCursor();
+        CompletableFuture<Void> cycle = reader.read().handle((records, e) -> {
+            if (e != null) {
+                logger.debug("Power profile of address {} failed: {}", serno, e.getMessage());
+            } else {
+                logger.debug("Read {} power profile records of address {}", records, serno);
+            }
+            if (reader.getCursor() != cursor && !disposed) {
+                updateProperty(PROPERTY_PROFILE_CURSOR, Integer.toString(reader.getCursor()));
+            }
+            return null;
+        });
+        profileCycle = cycle;
+        return cycle;
+    }
+
+    private @Nullable MercuryEnergyMeterProfileReader getProfileReader() {
+        MercuryEnergyMeterProfileReader reader = profileReader;
+        MercuryEnergyMeterBridgeHandler bridge = bridgeHandler;
+        if (reader == null && bridge != null) {
+            int cursor = MercuryEnergyMeterProfileReader.NO_CURSOR;
+            String property = getThing().getProperties().get(PROPERTY_PROFILE_CURSOR);
+            if (property != null) {
+                try {
+                    cursor = Integer.parseInt(property);
+                } catch (NumberFormatException e) {
+                    logger.debug("Ignoring invalid power profile cursor {}", property);
+                }
+            }
+            reader = new MercuryEnergyMeterProfileReader(bridge, serno, pass, timeZoneProvider.getTimeZone(), cursor,
+                    metadata.constant, this::publishProfile);
+            profileReader = reader;
+        }
+        return reader;
+    }
+
+    private boolean isProfileLinked() {
+        return isLinked(CHANNEL_PROFILE_TIME) || isLinked(CHANNEL_PROFILE_ACTIVE_POWER)
+                || isLinked(CHANNEL_PROFILE_ACTIVE_EXPORT_POWER) || isLinked(CHANNEL_PROFILE_REACTIVE_POWER)
+                || isLinked(CHANNEL_PROFILE_REACTIVE_EXPORT_POWER);
+    }
+
+    /**
+     * Profile records bypass the deadband, every record is published with the time of the record first
+     */
+    private void publishProfile(Record record) {
+        if (disposed) {
+            return;
+        }
+        updateState(CHANNEL_PROFILE_TIME, new DateTimeType(record.time));
+        // profile powers are P and Q of all phases
+        long ratio = ratios[MercuryEnergyMeterChannel.POWER_TOTAL.ordinal()];
+        publishProfile(CHANNEL_PROFILE_ACTIVE_POWER, record.activeImport * ratio);
+        publishProfile(CHANNEL_PROFILE_ACTIVE_EXPORT_POWER, record.activeExport * ratio);
+        publishProfile(CHANNEL_PROFILE_REACTIVE_POWER, record.reactiveImport * ratio);
+        publishProfile(CHANNEL_PROFILE_REACTIVE_EXPORT_POWER, record.reactiveExport * ratio);
+    }
+
+    private void publishProfile(String channel, double power) {
+        if (!Double.isNaN(power)) {
+            updateState(channel, new DecimalType(Math.round(power * 10) / 10.0));
+        }
+    }
+
+    /**
+     * Publishes the metrics of this energy meter, called by the bridge when it closes the measurement window
+     */
+    void publishMetrics(MercuryEnergyMeterBridgeHandler bridge) {
+        if (disposed || serno == 0) {
+            return;
+        }
+        MercuryEnergyMeterBridgeHandler.publishMetrics(bridge.getMetrics(serno), this::updateState);
+    }
+
+    /**
+     * Thing goes offline while the circuit breaker of the energy meter is open and back online with the first answer
+     */
+    private void updateReachability(MercuryEnergyMeterBridgeHandler bridge) {
+        if (disposed || !started) {
+            return;
+        }
+        MercuryEnergyMeterCircuitBreaker breaker = bridge.getCircuitBreaker(serno);
+        ThingStatus status = getThing().getStatus();
+        if (breaker.isClosed()) {
+            if (status != ThingStatus.ONLINE) {
+                updateStatus(ThingStatus.ONLINE, ThingStatusDetail.NONE, "Network address is " + serno);
+            }
+        } else if (status == ThingStatus.ONLINE) {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
+                    "Energy meter does not answer, next attempt in " + breaker.getRetryIn() + " s");
+        }
+    }
+
+    /**
+     * Reads all linked instantaneous values in one burst on the bus and publishes them with one time stamp. A
+     * snapshot with an invalid answer is dropped as a whole, a repeated request would describe another moment.
+     */
+    private CompletableFuture<Void> readSnapshot(List<MercuryEnergyMeterRead> reads) {
+        MercuryEnergyMeterBridgeHandler bridge = bridgeHandler;
+        if (bridge == null || disposed || reads.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<int[]> requests = new ArrayList<>(reads.size());
+        List<Integer> lengths = new ArrayList<>(reads.size());
+        for (MercuryEnergyMeterRead read : reads) {
+            requests.add(read.request);
+            lengths.add(read.answerLength);
+        }
+        List<CompletableFuture<byte[]>> answers = bridge.submitBurst(requests, lengths, pass, Priority.HIGH);
+        return CompletableFuture.allOf(answers.toArray(new CompletableFuture<?>[0])).handle((result, e) -> {
+            if (e == null) {
+                List<byte @Nullable []> valid = new ArrayList<>(reads.size());
+                for (int i = 0; i < reads.size(); i++) {
+                    byte[] pd = answers.get(i).join();
+                    if (isValid(reads.get(i), pd)) {
+                        markSupported(reads.get(i));
+                        valid.add(pd);
+                    } else {
+                        valid.add(null);
                     }
-                } else if (channel.getUID().getId().equals(MercuryEnergyMeterBindingConstants.CHANNEL_POWER_1)) {
-                    ArrayList<Float> val = new ArrayList<>();
-                    for (int i = 0; i < 3; i++) {
-                        int[] data = new int[] { serno, 0x08, 0x11, 0x01 };
-                        byte[] pd = bridgeHandler.sendPacket(data, 6, pass);
-                        float AplusTotalnum = ByteBuffer.wrap(new byte[] { 0x00, (byte) (pd[1] & 0x3F), pd[3], pd[2] })
-                                .getInt();
-                        val.add(AplusTotalnum);
+                    if (MercuryEnergyMeterBridgeHandler.isRejected(pd) && (pd[0] & 0xFF) == serno) {
+                        markUnsupported(reads.get(i));
                     }
-                    val.remove(Collections.max(val));
-                    val.remove(Collections.min(val));
-                    try {
-                        updateState(channel.getUID().getId(), DecimalType.valueOf(String.valueOf(val.get(0) / 100)));
-                        logger.debug("Power T1: {} W", val.get(0) / 100);
-                    } catch (Exception ignore) {
+                }
+                publishSnapshot(reads, valid, System.nanoTime());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Reads the values latched by the data fixation of the bridge. They do not change until the next fixation, so
+     * invalid answers are repeated like in the regular poll and the snapshot keeps the time of the fixation.
+     *
+     * @param fixedAt time of the fixation from {@link System#nanoTime()}
+     */
+    CompletableFuture<Void> pollFixed(long fixedAt) {
+        CompletableFuture<Void> previous = pollCycle;
+        List<MercuryEnergyMeterRead> reads = fixedReads;
+        if (!started || serno == 0 || reads.isEmpty() || !previous.isDone()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<CompletableFuture<byte @Nullable []>> answers = new ArrayList<>(reads.size());
+        for (MercuryEnergyMeterRead read : reads) {
+            answers.add(execute(read, 0));
+        }
+        CompletableFuture<Void> cycle = CompletableFuture.allOf(answers.toArray(new CompletableFuture<?>[0]))
+                .thenRun(() -> {
+                    List<byte @Nullable []> valid = new ArrayList<>(reads.size());
+                    for (CompletableFuture<byte @Nullable []> answer : answers) {
+                        valid.add(answer.join());
                     }
-                } else if (channel.getUID().getId().equals(MercuryEnergyMeterBindingConstants.CHANNEL_POWER_2)) {
-                    ArrayList<Float> val = new ArrayList<>();
-                    for (int i = 0; i < 3; i++) {
-                        int[] data = new int[] { serno, 0x08, 0x11, 0x02 };
-                        byte[] pd = bridgeHandler.sendPacket(data, 6, pass);
-                        float AplusTotalnum = ByteBuffer.wrap(new byte[] { 0x00, (byte) (pd[1] & 0x3F), pd[3], pd[2] })
-                                .getInt();
-                        val.add(AplusTotalnum);
+                    publishSnapshot(reads, valid, fixedAt);
+                    MercuryEnergyMeterBridgeHandler bridge = bridgeHandler;
+                    if (bridge != null) {
+                        bridge.pollCycle(serno, System.nanoTime() - fixedAt);
+                        updateReachability(bridge);
                     }
-                    val.remove(Collections.max(val));
-                    val.remove(Collections.min(val));
-                    try {
-                        updateState(channel.getUID().getId(), DecimalType.valueOf(String.valueOf(val.get(0) / 100)));
-                        logger.debug("Power T2: {} W", val.get(0) / 100);
-                    } catch (Exception ignore) {
+                });
+        pollCycle = cycle;
+        return cycle;
+    }
+
+    /**
+     * Publishes the time of the snapshot and then all its values, all samples get the same time. A snapshot with
+     * a missing answer is dropped as a whole.
+     *
+     * @param at time of the snapshot from {@link System#nanoTime()}
+     */
+    private void publishSnapshot(List<MercuryEnergyMeterRead> reads, List<byte @Nullable []> answers, long at) {
+        if (disposed) {
+            return;
+        }
+        for (int i = 0; i < reads.size(); i++) {
+            if (answers.get(i) == null) {
+                logger.debug("Snapshot of address {} has no valid answer to request 0x{}, dropped", serno,
+                        Integer.toHexString(reads.get(i).request[2]));
+                return;
+            }
+        }
+        ZonedDateTime time = ZonedDateTime.now(timeZoneProvider.getTimeZone()).minusNanos(System.nanoTime() - at);
+        updateState(CHANNEL_SNAPSHOT_TIME, new DateTimeType(time));
+        for (int i = 0; i < reads.size(); i++) {
+            byte[] pd = answers.get(i);
+            if (pd != null) {
+                decode(reads.get(i), pd, at);
+            }
+        }
+    }
+
+    /**
+     * Valid answers are decoded on the bus thread while the bridge already sends the next request
+     */
+    private CompletableFuture<Void> executeAll(List<MercuryEnergyMeterRead> reads) {
+        CompletableFuture<?>[] results = new CompletableFuture<?>[reads.size()];
+        for (int i = 0; i < results.length; i++) {
+            MercuryEnergyMeterRead read = reads.get(i);
+            results[i] = execute(read, 0).thenAccept(pd -> {
+                if (pd != null) {
+                    decode(read, pd, System.nanoTime());
+                }
+            });
+        }
+        return CompletableFuture.allOf(results);
+    }
+
+    /**
+     * Sends request and checks length, CRC and network address of the answer. The request is repeated only if the
+     * check fails, a request the energy meter rejects as not supported is not repeated and after repeated
+     * rejections it is dropped from the plan.
+     *
+     * @return valid answer or null if all attempts failed
+     */
+    private CompletableFuture<byte @Nullable []> execute(MercuryEnergyMeterRead read, int attempt) {
+        MercuryEnergyMeterBridgeHandler bridge = bridgeHandler;
+        if (bridge == null || disposed) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return bridge.submit(read.request, read.answerLength, pass, read.priority)
+                .exceptionally(e -> new byte[0]).thenCompose(pd -> {
+                    if (isValid(read, pd)) {
+                        markSupported(read);
+                        return CompletableFuture.completedFuture(pd);
                     }
-                } else if (channel.getUID().getId().equals(MercuryEnergyMeterBindingConstants.CHANNEL_POWER_3)) {
-                    ArrayList<Float> val = new ArrayList<>();
-                    for (int i = 0; i < 3; i++) {
-                        int[] data = new int[] { serno, 0x08, 0x11, 0x03 };
-                        byte[] pd = bridgeHandler.sendPacket(data, 6, pass);
-                        float AplusTotalnum = ByteBuffer.wrap(new byte[] { 0x00, (byte) (pd[1] & 0x3F), pd[3], pd[2] })
-                                .getInt();
-                        val.add(AplusTotalnum);
+                    if (MercuryEnergyMeterBridgeHandler.isRejected(pd) && (pd[0] & 0xFF) == serno) {
+                        logger.debug("Request 0x{} rejected by address {}", Integer.toHexString(read.request[1]),
+                                serno);
+                        markUnsupported(read);
+                        return CompletableFuture.completedFuture(null);
                     }
-                    val.remove(Collections.max(val));
-                    val.remove(Collections.min(val));
-                    try {
-                        updateState(channel.getUID().getId(), DecimalType.valueOf(String.valueOf(val.get(0) / 100)));
-                        logger.debug("Power T3: {} W", val.get(0) / 100);
-                    } catch (Exception ignore) {
+                    logger.debug("Invalid answer to request 0x{} from address {}, attempt {}",
+                            Integer.toHexString(read.request[1]), serno, attempt + 1);
+                    if (attempt >= MAX_RETRIES || !bridge.isReachable(serno)) {
+                        return CompletableFuture.completedFuture(null);
                     }
-                }
+                    bridge.retry(serno);
+                    return execute(read, attempt + 1);
+                });
+    }
+
+    private boolean isValid(MercuryEnergyMeterRead read, byte[] pd) {
+        return MercuryEnergyMeterCodec.isValid(pd, read.answerLength) && (pd[0] & 0xFF) == serno;
+    }
+
+    private void decode(MercuryEnergyMeterRead read, byte[] pd, long now) {
+        if (disposed) {
+            return;
+        }
+        for (int i = 0; i < read.channels.length; i++) {
+            MercuryEnergyMeterChannel channel = read.channels[i];
+            long raw = channel.decode(pd, read.offsets[i]);
+            if (raw != MercuryEnergyMeterChannel.NOT_SUPPORTED) {
+                publish(channel, raw * ratios[channel.ordinal()], now);
             }
         }
     }
 
+    /**
+     * Publishes fixed point value, raw 22150 with scale 2 is 221.50. Changes within the deadband of the channel are
+     * held back unless nothing was published for maxSilence.
+     */
+    void publish(MercuryEnergyMeterChannel channel, long raw, long now) {
+        int i = channel.ordinal();
+        if (!isPlausible(i, raw)) {
+            logger.debug("{} : raw {} is dropped as a spike", channel.id, raw);
+            return;
+        }
+        MercuryEnergyMeterSampleBuffer buffer = samples[i];
+        if (buffer != null) {
+            buffer.add(now, raw);
+        }
+        if (published[i] && !isSignificant(i, raw) && (maxSilence <= 0 || now - publishedAt[i] < maxSilence)) {
+            return;
+        }
+        published[i] = true;
+        publishedValues[i] = raw;
+        publishedAt[i] = now;
+        DecimalType state = MercuryEnergyMeterCodec.toState(raw, channel.scale);
+        updateState(channel.id, state);
+        logger.debug("{} : {}", channel.id, state);
+    }
+
+    private boolean isSignificant(int i, long raw) {
+        long change = Math.abs(raw - publishedValues[i]);
+        if (change == 0 || change < deadbands[i]) {
+            return false;
+        }
+        return change * 100 >= Math.abs(publishedValues[i]) * deadbandPercents[i];
+    }
+
+    /**
+     * Optional spike filter: a value which differs from the previous one by more than plausibilityLimit percent is
+     * published only if the next reading confirms it. A percentage of 0 is 0, so values rising from 0 (e.g. power of
+     * an idle line) are not filtered.
+     */
+    private boolean isPlausible(int i, long value) {
+        if (plausibilityLimit <= 0) {
+            return true;
+        }
+        long last = plausibleValues[i];
+        boolean confirmed = suspect[i]
+                && Math.abs(value - suspectValues[i]) * 100 <= Math.abs(suspectValues[i]) * plausibilityLimit;
+        suspect[i] = false;
+        if (!plausible[i] || last == 0 || Math.abs(value - last) * 100 <= Math.abs(last) * plausibilityLimit
+                || confirmed) {
+            plausible[i] = true;
+            plausibleValues[i] = value;
+            return true;
+        }
+        suspect[i] = true;
+        suspectValues[i] = value;
+        return false;
+    }
+
+    /**
+     * Instantaneous channel of an aggregate channel id like powertotalmax
+     */
+    private static @Nullable MercuryEnergyMeterChannel getAggregated(String id) {
+        for (String suffix : new String[] { AGGREGATE_MIN, AGGREGATE_MAX, AGGREGATE_MEAN, AGGREGATE_LAST }) {
+            if (id.endsWith(suffix)) {
+                MercuryEnergyMeterChannel channel = MercuryEnergyMeterChannel
+                        .fromId(id.substring(0, id.length() - suffix.length()));
+                return channel == null || channel.energy ? null : channel;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Publishes minimum, maximum, mean and last sample of the aggregation window for every linked aggregate channel
+     */
+    private void publishAggregates() {
+        Set<String> aggregates = linkedAggregates;
+        if (aggregates.isEmpty()) {
+            return;
+        }
+        for (MercuryEnergyMeterChannel channel : MercuryEnergyMeterChannel.values()) {
+            Aggregate aggregate = getAggregate(channel.id, aggregationWindow);
+            if (aggregate == null) {
+                continue;
+            }
+            publishAggregate(aggregates, channel.id + AGGREGATE_MIN, aggregate.min, channel.scale);
+            publishAggregate(aggregates, channel.id + AGGREGATE_MAX, aggregate.max, channel.scale);
+            publishAggregate(aggregates, channel.id + AGGREGATE_MEAN, Math.round(aggregate.mean), channel.scale);
+            publishAggregate(aggregates, channel.id + AGGREGATE_LAST, aggregate.last, channel.scale);
+        }
+    }
+
+    private void publishAggregate(Set<String> aggregates, String channelId, long raw, int scale) {
+        if (aggregates.contains(channelId)) {
+            updateState(channelId, MercuryEnergyMeterCodec.toState(raw, scale));
+        }
+    }
+
+    /**
+     * Aggregate of the raw samples of an instantaneous channel in the last seconds, answered from memory without
+     * requests to the energy meter. Values keep the fixed point scale of the channel.
+     *
+     * @return aggregate or null if the channel is not sampled or has no samples in this time
+     */
+    public @Nullable Aggregate getAggregate(String channelId, int seconds) {
+        MercuryEnergyMeterChannel channel = MercuryEnergyMeterChannel.fromId(channelId);
+        MercuryEnergyMeterSampleBuffer buffer = channel == null ? null : samples[channel.ordinal()];
+        if (buffer == null) {
+            return null;
+        }
+        return buffer.aggregate(System.nanoTime() - TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    /**
+     * REFRESH of an instantaneous channel is answered with the last sample, the energy meter is not asked
+     */
     @Override
     public void handleCommand(ChannelUID channelUID, Command command) {
+        if (!(command instanceof RefreshType)) {
+            return;
+        }
+        MercuryEnergyMeterChannel channel = MercuryEnergyMeterChannel.fromId(channelUID.getId());
+        MercuryEnergyMeterSampleBuffer buffer = channel == null ? null : samples[channel.ordinal()];
+        if (channel != null && buffer != null) {
+            Long last = buffer.last(System.nanoTime() - TimeUnit.SECONDS.toNanos(HISTORY_SECONDS));
+            if (last != null) {
+                updateState(channel.id, MercuryEnergyMeterCodec.toState(last, channel.scale));
+            }
+        }
     }
 
     @Override
     public void dispose() {
         logger.info("disposing");
-        final ScheduledFuture<?> task = pollingTask;
-        if (task != null && !task.isCancelled()) {
-            task.cancel(true);
-            pollingTask = null;
-            logger.info("polling stop");
-        }
+        disposed = true;
+        stop();
         super.dispose();
     }
 }
@@ -34,16 +34,76 @@ public class MercuryEnergyMeterBindingConstants {
     public static final String CHANNEL_ENERGY_1 = "energyactive1";
     public static final String CHANNEL_ENERGY_2 = "energyactive2";
     public static final String CHANNEL_ENERGY_3 = "energyactive3";
+    public static final String CHANNEL_ENERGY_ACTIVE_EXPORT_TOTAL = "energyactiveexporttotal";
+    public static final String CHANNEL_ENERGY_ACTIVE_EXPORT_1 = "energyactiveexport1";
+    public static final String CHANNEL_ENERGY_ACTIVE_EXPORT_2 = "energyactiveexport2";
+    public static final String CHANNEL_ENERGY_ACTIVE_EXPORT_3 = "energyactiveexport3";
+    public static final String CHANNEL_ENERGY_REACTIVE_TOTAL = "energyreactivetotal";
+    public static final String CHANNEL_ENERGY_REACTIVE_1 = "energyreactive1";
+    public static final String CHANNEL_ENERGY_REACTIVE_2 = "energyreactive2";
+    public static final String CHANNEL_ENERGY_REACTIVE_3 = "energyreactive3";
+    public static final String CHANNEL_ENERGY_REACTIVE_EXPORT_TOTAL = "energyreactiveexporttotal";
+    public static final String CHANNEL_ENERGY_REACTIVE_EXPORT_1 = "energyreactiveexport1";
+    public static final String CHANNEL_ENERGY_REACTIVE_EXPORT_2 = "energyreactiveexport2";
+    public static final String CHANNEL_ENERGY_REACTIVE_EXPORT_3 = "energyreactiveexport3";
     public static final String CHANNEL_POWER_ACTIVE_TOTAL = "powertotal";
     public static final String CHANNEL_POWER_1 = "power1";
     public static final String CHANNEL_POWER_2 = "power2";
     public static final String CHANNEL_POWER_3 = "power3";
+    public static final String CHANNEL_REACTIVE_POWER_TOTAL = "reactivepowertotal";
+    public static final String CHANNEL_REACTIVE_POWER_1 = "reactivepower1";
+    public static final String CHANNEL_REACTIVE_POWER_2 = "reactivepower2";
+    public static final String CHANNEL_REACTIVE_POWER_3 = "reactivepower3";
+    public static final String CHANNEL_APPARENT_POWER_TOTAL = "apparentpowertotal";
+    public static final String CHANNEL_APPARENT_POWER_1 = "apparentpower1";
+    public static final String CHANNEL_APPARENT_POWER_2 = "apparentpower2";
+    public static final String CHANNEL_APPARENT_POWER_3 = "apparentpower3";
+    public static final String CHANNEL_POWER_FACTOR_TOTAL = "powerfactortotal";
+    public static final String CHANNEL_POWER_FACTOR_1 = "powerfactor1";
+    public static final String CHANNEL_POWER_FACTOR_2 = "powerfactor2";
+    public static final String CHANNEL_POWER_FACTOR_3 = "powerfactor3";
+    public static final String CHANNEL_FREQUENCY = "frequency";
+    public static final String CHANNEL_SNAPSHOT_TIME = "snapshottime";
+    public static final String CHANNEL_PROFILE_TIME = "profiletime";
+    public static final String CHANNEL_PROFILE_ACTIVE_POWER = "profileactivepower";
+    public static final String CHANNEL_PROFILE_ACTIVE_EXPORT_POWER = "profileactiveexportpower";
+    public static final String CHANNEL_PROFILE_REACTIVE_POWER = "profilereactivepower";
+    public static final String CHANNEL_PROFILE_REACTIVE_EXPORT_POWER = "profilereactiveexportpower";
+
+    // Suffixes of the aggregate channels of instantaneous values, e.g. powertotalmax
+    public static final String AGGREGATE_MIN = "min";
+    public static final String AGGREGATE_MAX = "max";
+    public static final String AGGREGATE_MEAN = "mean";
+    public static final String AGGREGATE_LAST = "last";
+
+    // Bus metrics of the bridge and the metrics of each energy meter
+    public static final String CHANNEL_TRANSACTIONS = "transactions";
+    public static final String CHANNEL_CRC_ERRORS = "crcerrors";
+    public static final String CHANNEL_TIMEOUTS = "timeouts";
+    public static final String CHANNEL_RETRIES = "retries";
+    public static final String CHANNEL_BUS_UTILIZATION = "busutilization";
+    public static final String CHANNEL_ANSWER_TIME = "answertime95";
+    public static final String CHANNEL_ANSWER_TIMES = "answertimes";
+    public static final String CHANNEL_POLL_CYCLE = "pollcycle";
 
     private static final String BINDING_ID = "mercuryenergymeter";
 
     // List of all Thing Type UIDs
     public static final ThingTypeUID RS485_BRIDGE = new ThingTypeUID(BINDING_ID, "rs485");
+    public static final ThingTypeUID TCP_BRIDGE = new ThingTypeUID(BINDING_ID, "tcp");
     public static final ThingTypeUID MERCURY_POWERMETER_THING = new ThingTypeUID(BINDING_ID, "energymeter203td");
 
     // List of all Channel ids
+
+    // Properties of discovered energy meters
+    public static final String PROPERTY_NETWORK_ADDRESS = "networkAddress";
+    // Memory address of the last power profile record read from the energy meter
+    public static final String PROPERTY_PROFILE_CURSOR = "profileCursor";
+    // Energy meter metadata kept between restarts
+    public static final String PROPERTY_VARIANT = "variant";
+    public static final String PROPERTY_METER_CONSTANT = "meterConstant";
+    public static final String PROPERTY_VOLTAGE_RATIO = "voltageRatio";
+    public static final String PROPERTY_CURRENT_RATIO = "currentRatio";
+    // Channels the energy meter answered with "invalid command or parameter"
+    public static final String PROPERTY_UNSUPPORTED_CHANNELS = "unsupportedChannels";
 }
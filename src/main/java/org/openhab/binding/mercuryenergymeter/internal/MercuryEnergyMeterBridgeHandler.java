@@ -0,0 +1,733 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterBindingConstants.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.mercuryenergymeter.discovery.MercuryEnergyMeterDiscoveryService;
+import org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterTransaction.Priority;
+import org.openhab.core.common.ThreadPoolManager;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.thing.Bridge;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.binding.BaseBridgeHandler;
+import org.openhab.core.thing.binding.ThingHandler;
+import org.openhab.core.thing.binding.ThingHandlerService;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link MercuryEnergyMeterBridgeHandler} runs the request/answer exchanges of one bus independent of the
+ * transport. Transactions wait in a priority queue and are executed one at a time without a thread of their own:
+ * every step is a short task on the shared bus pool, woken up by the transport when the answer is complete or by the
+ * answer timeout.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public abstract class MercuryEnergyMeterBridgeHandler extends BaseBridgeHandler {
+
+    private final Logger logger = LoggerFactory.getLogger(MercuryEnergyMeterBridgeHandler.class);
+    /**
+     * Energy meter closes the channel after 240 seconds without requests, reopen it a bit earlier
+     */
+    private static final long SESSION_TIMEOUT = 230000;
+    /**
+     * Maximum time a request may spend in the bus queue and on the line
+     */
+    private static final long TRANSACTION_TIMEOUT = 60000;
+    /**
+     * How often the metrics of the bus and of each energy meter are published
+     */
+    private static final int METRICS_REPORT_PERIOD = 60;
+    /**
+     * Energy meters detect the end of a request by a pause of several characters and answer slower on a slow line,
+     * so a probe waits the time of this many characters after the line time, about 100 ms at 9600 baud
+     */
+    private static final int PROBE_ANSWER_CHARACTERS = 100;
+    /**
+     * Requests to this address are executed by all energy meters on the bus, none of them answers
+     */
+    public static final int BROADCAST_ADDRESS = 0xFE;
+    /**
+     * Pause after a broadcast frame for the energy meters to execute it
+     */
+    private static final long BROADCAST_DELAY = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final int STATUS_OK = 0x00;
+    private static final int STATUS_INVALID = 0x01;
+    private static final int STATUS_ACCESS_LEVEL = 0x03;
+    private static final int STATUS_CHANNEL_CLOSED = 0x05;
+    private static final String BUS_POOL = "mercuryenergymeter-bus";
+
+    /**
+     * Exchanges of all buses are short non-blocking tasks on this pool
+     */
+    private final ScheduledExecutorService busExecutor = ThreadPoolManager.getScheduledPool(BUS_POOL);
+    private @Nullable ScheduledFuture<?> metricsTask;
+    private @Nullable ScheduledFuture<?> fixationTask;
+    private volatile CompletableFuture<Void> fixationCycle = CompletableFuture.completedFuture(null);
+    private volatile int fixationPeriod;
+    private volatile int fixationPassword;
+    /**
+     * Time of the last successful exchange per network address, 0 if session is not open
+     */
+    private final long[] sessions = new long[256];
+    private final MercuryEnergyMeterCodec codec = new MercuryEnergyMeterCodec();
+    private final MercuryEnergyMeterLatency[] latencies = new MercuryEnergyMeterLatency[256];
+    private final MercuryEnergyMeterMetrics busMetrics = new MercuryEnergyMeterMetrics();
+    private final MercuryEnergyMeterMetrics[] metrics = new MercuryEnergyMeterMetrics[256];
+    private final MercuryEnergyMeterCircuitBreaker[] breakers = new MercuryEnergyMeterCircuitBreaker[256];
+    private long lastFrameEnd;
+    private final PriorityBlockingQueue<MercuryEnergyMeterTransaction> queue = new PriorityBlockingQueue<>();
+    private final Map<Integer, Integer> pending = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicBoolean busy = new AtomicBoolean();
+    /**
+     * Rest of the running burst, owned by whoever holds {@link #busy}
+     */
+    private volatile @Nullable MercuryEnergyMeterTransaction burst;
+    private volatile boolean running;
+    protected final MercuryEnergyMeterFrameReceiver receiver = new MercuryEnergyMeterFrameReceiver();
+    /**
+     * Speed of the RS485 line, used for the line time of the frames
+     */
+    protected volatile int portSpeed = 9600;
+
+    public MercuryEnergyMeterBridgeHandler(Bridge thing) {
+        super(thing);
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new MercuryEnergyMeterLatency();
+            metrics[i] = new MercuryEnergyMeterMetrics();
+            breakers[i] = new MercuryEnergyMeterCircuitBreaker();
+        }
+    }
+
+    @Override
+    public void handleCommand(ChannelUID channelUID, Command command) {
+    }
+
+    @Override
+    public Collection<Class<? extends ThingHandlerService>> getServices() {
+        return Set.of(MercuryEnergyMeterDiscoveryService.class);
+    }
+
+    protected abstract boolean isConnected();
+
+    /**
+     * Writes the whole request to the transport without waiting for the answer
+     */
+    protected abstract void write(byte[] request, int length) throws IOException;
+
+    /**
+     * Starts executing queued transactions, called from initialize()
+     */
+    protected void startBus() {
+        MercuryEnergyMeterConfiguration config = getConfigAs(MercuryEnergyMeterConfiguration.class);
+        fixationPeriod = config.fixationPeriod;
+        fixationPassword = config.userpassword;
+        running = true;
+        metricsTask = scheduler.scheduleWithFixedDelay(this::reportMetrics, METRICS_REPORT_PERIOD,
+                METRICS_REPORT_PERIOD, TimeUnit.SECONDS);
+        if (fixationPeriod > 0) {
+            fixationTask = scheduler.scheduleWithFixedDelay(this::fixation, fixationPeriod, fixationPeriod,
+                    TimeUnit.SECONDS);
+        }
+        dispatch();
+    }
+
+    /**
+     * Cancels queued transactions, the running exchange ends with its answer or timeout
+     */
+    protected void stopBus() {
+        running = false;
+        final ScheduledFuture<?> task = metricsTask;
+        if (task != null && !task.isCancelled()) {
+            task.cancel(true);
+            metricsTask = null;
+        }
+        final ScheduledFuture<?> fixation = fixationTask;
+        if (fixation != null && !fixation.isCancelled()) {
+            fixation.cancel(true);
+            fixationTask = null;
+        }
+        cancel(burst);
+        burst = null;
+        MercuryEnergyMeterTransaction transaction;
+        while ((transaction = queue.poll()) != null) {
+            cancel(transaction);
+        }
+        pending.clear();
+        resetSessions();
+    }
+
+    /**
+     * Forgets open sessions, e.g. when the connection to the bus was lost
+     */
+    protected void resetSessions() {
+        Arrays.fill(sessions, 0);
+    }
+
+    public byte[] sendPacket(int[] data, int answerLenght, int password) {
+        return sendPacket(data, answerLenght, password, Priority.NORMAL);
+    }
+
+    /**
+     * Puts the request to the bus queue and waits for the answer
+     *
+     * @return received bytes, empty if nothing was received
+     */
+    public byte[] sendPacket(int[] data, int answerLenght, int password, Priority priority) {
+        CompletableFuture<byte[]> answer = submit(data, answerLenght, password, priority);
+        try {
+            return answer.get(TRANSACTION_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            answer.cancel(false);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | CancellationException e) {
+            answer.cancel(false);
+            logger.debug("Request to address {} failed: {}", data[0], e.getMessage());
+        }
+        return new byte[0];
+    }
+
+    public CompletableFuture<byte[]> submit(int[] data, int answerLenght, int password, Priority priority) {
+        int round = pending.merge(data[0], 1, Integer::sum);
+        MercuryEnergyMeterTransaction transaction = new MercuryEnergyMeterTransaction(data, answerLenght, password,
+                priority, round, sequence.incrementAndGet());
+        queue.add(transaction);
+        dispatch();
+        return transaction.result;
+    }
+
+    /**
+     * Puts the requests to the bus queue as one burst. Once the first request gets the line, the others follow it
+     * back to back before any other queued transaction, so all answers describe nearly the same moment.
+     *
+     * @return answers in the order of the requests
+     */
+    public List<CompletableFuture<byte[]>> submitBurst(List<int[]> data, List<Integer> answerLenghts, int password,
+            Priority priority) {
+        List<CompletableFuture<byte[]>> results = new ArrayList<>(data.size());
+        if (data.isEmpty()) {
+            return results;
+        }
+        MercuryEnergyMeterTransaction first = new MercuryEnergyMeterTransaction(data.get(0), answerLenghts.get(0),
+                password, priority, pending.merge(data.get(0)[0], 1, Integer::sum), sequence.incrementAndGet());
+        results.add(first.result);
+        MercuryEnergyMeterTransaction last = first;
+        for (int i = 1; i < data.size(); i++) {
+            MercuryEnergyMeterTransaction transaction = new MercuryEnergyMeterTransaction(data.get(i),
+                    answerLenghts.get(i), password, priority, 0, 0);
+            last.next = transaction;
+            last = transaction;
+            results.add(transaction.result);
+        }
+        queue.add(first);
+        dispatch();
+        return results;
+    }
+
+    private static void cancel(@Nullable MercuryEnergyMeterTransaction first) {
+        for (MercuryEnergyMeterTransaction transaction = first; transaction != null; transaction = transaction.next) {
+            transaction.result.cancel(false);
+        }
+    }
+
+    /**
+     * Checks if an energy meter answers the test request on the given network address. Probes do not open a session
+     * and wait for the line time plus {@link #getProbeAnswerDelay()}, so a slow energy meter is not missed.
+     */
+    public CompletableFuture<Boolean> probe(int address) {
+        int[] data = new int[] { address, 0x00 };
+        int length = MercuryEnergyMeterFrameReceiver.STATUS_FRAME_LENGTH;
+        MercuryEnergyMeterTransaction transaction = new MercuryEnergyMeterTransaction(data, length, 0, Priority.LOW,
+                pending.merge(address, 1, Integer::sum), sequence.incrementAndGet(), true);
+        queue.add(transaction);
+        dispatch();
+        return transaction.result
+                .thenApply(answer -> MercuryEnergyMeterCodec.isValid(answer, length) && answer[0] == (byte) address);
+    }
+
+    /**
+     * Starts the next transaction of the running burst or the next queued transaction if the bus is idle
+     */
+    private void dispatch() {
+        while (running && (burst != null || !queue.isEmpty()) && busy.compareAndSet(false, true)) {
+            MercuryEnergyMeterTransaction next = burst;
+            if (next == null) {
+                next = queue.poll();
+                if (next == null) {
+                    busy.set(false);
+                    continue;
+                }
+                pending.computeIfPresent(next.getAddress(), (address, count) -> count > 1 ? count - 1 : null);
+            }
+            MercuryEnergyMeterTransaction transaction = next;
+            burst = transaction.next;
+            if (transaction.result.isDone()) {
+                busy.set(false);
+                continue;
+            }
+            if (hasBreaker(transaction.getAddress(), transaction.probe)
+                    && !breakers[transaction.getAddress() & 0xFF].allowRequest()) {
+                // silent energy meter, fail without spending line time
+                transaction.result.complete(new byte[0]);
+                busy.set(false);
+                continue;
+            }
+            boolean raw = transaction.probe || transaction.getAddress() == BROADCAST_ADDRESS;
+            (raw ? exchange(transaction.data, transaction.answerLength, transaction.probe)
+                    : transact(transaction.data, transaction.answerLength, transaction.password))
+                    .whenCompleteAsync((answer, e) -> {
+                        // next request goes to the line while the caller decodes this answer
+                        busy.set(false);
+                        dispatch();
+                        if (e != null) {
+                            transaction.result.completeExceptionally(e);
+                        } else {
+                            transaction.result.complete(answer);
+                        }
+                    }, busExecutor);
+        }
+    }
+
+    /**
+     * Broadcast and discovery probes do not count for the circuit breaker of the address
+     */
+    private static boolean hasBreaker(int address, boolean probe) {
+        return !probe && address != 0 && address != BROADCAST_ADDRESS;
+    }
+
+    private CompletableFuture<byte[]> transact(int[] data, int answerLenght, int password) {
+        int address = data[0];
+        CompletableFuture<Boolean> session = isSessionOpen(address) ? CompletableFuture.completedFuture(true)
+                : openSession(address, password);
+        return session.thenCompose(open -> open ? exchange(data, answerLenght) : failed())
+                .thenCompose(answer -> {
+                    if (!isAccessDenied(answer)) {
+                        return CompletableFuture.completedFuture(answer);
+                    }
+                    logger.debug("Session for address {} is closed by energy meter, reopening", address);
+                    sessions[address & 0xFF] = 0;
+                    return openSession(address, password)
+                            .thenCompose(open -> open ? exchange(data, answerLenght) : failed());
+                }).thenApply(answer -> {
+                    if (MercuryEnergyMeterCodec.isValid(answer, answerLenght)) {
+                        sessions[address & 0xFF] = System.currentTimeMillis();
+                    }
+                    return answer;
+                });
+    }
+
+    private static CompletableFuture<byte[]> failed() {
+        return CompletableFuture.completedFuture(new byte[0]);
+    }
+
+    private boolean isSessionOpen(int address) {
+        long lastAccess = sessions[address & 0xFF];
+        return lastAccess != 0 && System.currentTimeMillis() - lastAccess < SESSION_TIMEOUT;
+    }
+
+    private CompletableFuture<Boolean> openSession(int address, int password) {
+        int[] getpass = openRequest(address, password);
+        if (getpass == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return exchange(getpass, 4).thenApply(pwdanswer -> {
+            if (MercuryEnergyMeterCodec.isValid(pwdanswer, 4) && pwdanswer[1] == STATUS_OK) {
+                sessions[address & 0xFF] = System.currentTimeMillis();
+                return true;
+            }
+            sessions[address & 0xFF] = 0;
+            return false;
+        });
+    }
+
+    /**
+     * Request to open the channel with user access level
+     *
+     * @return request or null if the password has not 6 digits
+     */
+    private int @Nullable [] openRequest(int address, int password) {
+        String pwdConv = Integer.toString(password);
+        if (pwdConv.length() != 6) {
+            logger.debug("Password must contain 6 digits");
+            return null;
+        }
+        int[] pswd = new int[pwdConv.length()];
+        for (int i = 0; i < pwdConv.length(); i++) {
+            pswd[i] = Integer.parseInt(String.valueOf(pwdConv.charAt(i)));
+        }
+        return new int[] { address, 0x01, 0x01, pswd[0], pswd[1], pswd[2], pswd[3], pswd[4], pswd[5] };
+    }
+
+    /**
+     * Latches the instantaneous values of all energy meters on the bus at the same moment. The channel is opened and
+     * the data fixation (0x03 0x08) is requested with two broadcast frames in one burst, energy meters do not answer
+     * them. Energy meters with another password than the one of the bridge do not latch their values.
+     *
+     * @return {@link System#nanoTime()} right after the fixation frame
+     */
+    public CompletableFuture<Long> fixData() {
+        int[] open = openRequest(BROADCAST_ADDRESS, fixationPassword);
+        if (open == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Password must contain 6 digits"));
+        }
+        int[] fix = new int[] { BROADCAST_ADDRESS, 0x03, 0x08 };
+        List<CompletableFuture<byte[]>> done = submitBurst(List.of(open, fix), List.of(0, 0), fixationPassword,
+                Priority.HIGH);
+        return done.get(1).thenApply(answer -> System.nanoTime() - BROADCAST_DELAY);
+    }
+
+    public boolean isFixation() {
+        return fixationPeriod > 0;
+    }
+
+    /**
+     * @return seconds between two data fixations, 0 if disabled
+     */
+    public int getFixationPeriod() {
+        return fixationPeriod;
+    }
+
+    /**
+     * One cycle of the bus snapshot: broadcast data fixation, then every energy meter of the bridge reads its
+     * latched values. The next fixation waits until all of them are read.
+     */
+    private void fixation() {
+        if (!fixationCycle.isDone()) {
+            logger.debug("Values of the previous data fixation are still being read");
+            return;
+        }
+        List<MercuryEnergyMeter203tdHandler> meters = new ArrayList<>();
+        for (Thing thing : getThing().getThings()) {
+            ThingHandler handler = thing.getHandler();
+            if (handler instanceof MercuryEnergyMeter203tdHandler) {
+                meters.add((MercuryEnergyMeter203tdHandler) handler);
+            }
+        }
+        if (meters.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        fixationCycle = fixData().thenCompose(fixedAt -> {
+            CompletableFuture<?>[] reads = new CompletableFuture<?>[meters.size()];
+            for (int i = 0; i < reads.length; i++) {
+                reads[i] = meters.get(i).pollFixed(fixedAt);
+            }
+            return CompletableFuture.allOf(reads);
+        }).handle((result, e) -> {
+            if (e != null) {
+                logger.debug("Data fixation failed: {}", e.getMessage());
+            } else {
+                logger.debug("Data fixation of {} energy meters read in {} ms", meters.size(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Energy meter answers with a short 4 byte status frame "invalid command or parameter" to requests it does not
+     * support, e.g. tariffs of a single tariff meter
+     */
+    public static boolean isRejected(byte[] answer) {
+        int length = MercuryEnergyMeterFrameReceiver.STATUS_FRAME_LENGTH;
+        return answer.length == length && MercuryEnergyMeterCodec.isValid(answer, length)
+                && (answer[1] & 0x0F) == STATUS_INVALID;
+    }
+
+    /**
+     * Energy meter answers with a short 4 byte status frame instead of data if channel is not open
+     */
+    private boolean isAccessDenied(byte[] answer) {
+        int length = MercuryEnergyMeterFrameReceiver.STATUS_FRAME_LENGTH;
+        if (answer.length != length || !MercuryEnergyMeterCodec.isValid(answer, length)) {
+            return false;
+        }
+        int status = answer[1] & 0x0F;
+        return status == STATUS_ACCESS_LEVEL || status == STATUS_CHANNEL_CLOSED;
+    }
+
+    /**
+     * Sends one frame after the silent interval and completes with the answer, which is zero filled where nothing
+     * was received
+     */
+    private CompletableFuture<byte[]> exchange(int[] data, int answerLenght) {
+        return exchange(data, answerLenght, false);
+    }
+
+    private CompletableFuture<byte[]> exchange(int[] data, int answerLenght, boolean probe) {
+        Exchange exchange = new Exchange(data, answerLenght, probe);
+        busExecutor.schedule(exchange::start, silentInterval(exchange.latency), TimeUnit.NANOSECONDS);
+        return exchange.answer;
+    }
+
+    /**
+     * Answer timeout of an energy meter without measured answer times, based on the port speed
+     */
+    private long getProbeAnswerDelay() {
+        return MercuryEnergyMeterFrameReceiver.transferTime(PROBE_ANSWER_CHARACTERS, portSpeed);
+    }
+
+    /**
+     * Time in nanoseconds one probe of an absent energy meter takes on the line: the request, the silent interval
+     * and the answer window
+     */
+    public long getProbeTime() {
+        int length = MercuryEnergyMeterFrameReceiver.STATUS_FRAME_LENGTH;
+        return MercuryEnergyMeterFrameReceiver.transferTime(length * 2, portSpeed) + getProbeAnswerDelay();
+    }
+
+    /**
+     * Time left to keep the line silent for 3.5 characters plus the jitter of the energy meter after the previous
+     * frame
+     */
+    private long silentInterval(MercuryEnergyMeterLatency latency) {
+        long gap = MercuryEnergyMeterFrameReceiver.transferTime(4, portSpeed) * 7 / 8 + latency.getJitter();
+        return Math.max(0, lastFrameEnd + gap - System.nanoTime());
+    }
+
+    /**
+     * A single request on the line, finished either by the receiver or by the answer timeout
+     */
+    private class Exchange {
+        private final int[] data;
+        private final int answerLenght;
+        private final byte[] frame;
+        private final byte[] request;
+        private final int requestLength;
+        private final MercuryEnergyMeterLatency latency;
+        private final MercuryEnergyMeterMetrics meterMetrics;
+        private final @Nullable MercuryEnergyMeterCircuitBreaker breaker;
+        private final boolean probe;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        final CompletableFuture<byte[]> answer = new CompletableFuture<>();
+        private volatile @Nullable ScheduledFuture<?> timeout;
+        private volatile boolean written;
+        private volatile boolean failed;
+        private volatile long sent;
+
+        Exchange(int[] data, int answerLenght, boolean probe) {
+            this.data = data;
+            this.answerLenght = answerLenght;
+            this.probe = probe;
+            this.frame = new byte[answerLenght];
+            this.latency = getLatency(data[0]);
+            this.meterMetrics = metrics[data[0] & 0xFF];
+            this.breaker = hasBreaker(data[0], probe) ? breakers[data[0] & 0xFF] : null;
+            // encoded while the line is still silent after the previous frame and sent from the shared buffer: the next
+            // exchange is created only after this one is finished, so nothing overwrites the request before it is sent
+            this.requestLength = codec.encode(data);
+            this.request = codec.getRequest();
+        }
+
+        void start() {
+            if (logger.isDebugEnabled()) {
+                logger.debug("   send: {}", MercuryEnergyMeterCodec.toHex(request, requestLength));
+            }
+            long transfer = MercuryEnergyMeterFrameReceiver.transferTime(requestLength + answerLenght, portSpeed);
+            if (answerLenght > 0) {
+                receiver.expect(request, requestLength, answerLenght, () -> busExecutor.execute(this::finish));
+            }
+            long answerDelay = probe ? getProbeAnswerDelay()
+                    : answerLenght == 0 ? BROADCAST_DELAY : latency.getAnswerDelay();
+            timeout = busExecutor.schedule(this::finish, transfer + answerDelay, TimeUnit.NANOSECONDS);
+            if (!isConnected()) {
+                finish();
+                return;
+            }
+            written = true;
+            sent = System.nanoTime();
+            try {
+                write(request, requestLength);
+            } catch (IOException e) {
+                failed = true;
+                logger.debug("Error writing to bus: {}", e.getMessage(), e);
+                finish();
+            }
+        }
+
+        void finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            ScheduledFuture<?> task = timeout;
+            if (task != null) {
+                task.cancel(false);
+            }
+            int received = receiver.take(frame);
+            // a status frame or a partial answer is passed on with its own length, never padded to a full answer
+            byte[] result = received == answerLenght ? frame : Arrays.copyOf(frame, received);
+            int discarded = receiver.getDiscarded();
+            MercuryEnergyMeterCircuitBreaker circuitBreaker = breaker;
+            if (!written && circuitBreaker != null) {
+                circuitBreaker.cancelTrial();
+            }
+            if (written && answerLenght == 0) {
+                // broadcast, nothing to wait for
+                lastFrameEnd = System.nanoTime();
+                busMetrics.transaction(lastFrameEnd - sent);
+            } else if (written) {
+                long completedAt = receiver.getCompletedAt();
+                if (circuitBreaker != null) {
+                    if (completedAt != 0 && MercuryEnergyMeterCodec.isValid(result, received)) {
+                        circuitBreaker.success();
+                    } else {
+                        circuitBreaker.failure();
+                    }
+                }
+                if (completedAt != 0) {
+                    long answerTransfer = MercuryEnergyMeterFrameReceiver
+                            .transferTime(requestLength + received, portSpeed);
+                    long answerTime = completedAt - sent - answerTransfer;
+                    latency.update(answerTime);
+                    busMetrics.answer(answerTime);
+                    meterMetrics.answer(answerTime);
+                } else if (!probe) {
+                    // silence on a probe just means there is no energy meter with this address
+                    if (!failed) {
+                        latency.timeout();
+                        logger.debug("Received {} of {} bytes", received, answerLenght);
+                    }
+                    busMetrics.timeout();
+                    meterMetrics.timeout();
+                }
+                if (discarded > 0) {
+                    // noise or a corrupted answer, the receiver only completes frames with valid CRC
+                    logger.debug("Dropped {} bytes while waiting for address {}", discarded, data[0]);
+                    busMetrics.crcError();
+                    meterMetrics.crcError();
+                }
+                lastFrameEnd = System.nanoTime();
+                busMetrics.transaction(lastFrameEnd - sent);
+                meterMetrics.transaction(lastFrameEnd - sent);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("receive: {}", MercuryEnergyMeterCodec.toHex(result, received));
+                }
+            }
+            answer.complete(result);
+        }
+    }
+
+    /**
+     * Rolling estimate of the answer time of the energy meter with the given network address
+     */
+    public MercuryEnergyMeterLatency getLatency(int address) {
+        return latencies[address & 0xFF];
+    }
+
+    /**
+     * False while the circuit breaker of the address is open because the energy meter stopped answering
+     */
+    public boolean isReachable(int address) {
+        return breakers[address & 0xFF].isClosed();
+    }
+
+    public MercuryEnergyMeterCircuitBreaker getCircuitBreaker(int address) {
+        return breakers[address & 0xFF];
+    }
+
+    /**
+     * Energy meter with the given network address did not answer correctly and the request is repeated
+     */
+    public void retry(int address) {
+        busMetrics.retry();
+        metrics[address & 0xFF].retry();
+    }
+
+    /**
+     * Duration of one poll of the energy meter with the given network address
+     */
+    public void pollCycle(int address, long nanos) {
+        busMetrics.pollCycle(nanos);
+        metrics[address & 0xFF].pollCycle(nanos);
+    }
+
+    /**
+     * Counters of the exchanges with the given network address
+     */
+    public MercuryEnergyMeterMetrics getMetrics(int address) {
+        return metrics[address & 0xFF];
+    }
+
+    public MercuryEnergyMeterMetrics getBusMetrics() {
+        return busMetrics;
+    }
+
+    private void reportMetrics() {
+        busMetrics.report();
+        publishMetrics(busMetrics, this::updateState);
+        for (int address = 0; address < metrics.length; address++) {
+            MercuryEnergyMeterMetrics meterMetrics = metrics[address];
+            if (meterMetrics.getTransactions() > 0) {
+                meterMetrics.report();
+                logger.debug("Address {}: {}, answer time {}", address, meterMetrics, latencies[address]);
+            }
+        }
+        // the metrics of each energy meter are published by its thing
+        for (Thing thing : getThing().getThings()) {
+            ThingHandler handler = thing.getHandler();
+            if (handler instanceof MercuryEnergyMeter203tdHandler) {
+                ((MercuryEnergyMeter203tdHandler) handler).publishMetrics(this);
+            }
+        }
+    }
+
+    /**
+     * Publishes the metrics of the last window to the metric channels of a bridge or an energy meter
+     */
+    static void publishMetrics(MercuryEnergyMeterMetrics metrics, BiConsumer<String, State> update) {
+        update.accept(CHANNEL_TRANSACTIONS, new DecimalType(metrics.getTransactions()));
+        update.accept(CHANNEL_CRC_ERRORS, new DecimalType(metrics.getCrcErrors()));
+        update.accept(CHANNEL_TIMEOUTS, new DecimalType(metrics.getTimeouts()));
+        update.accept(CHANNEL_RETRIES, new DecimalType(metrics.getRetries()));
+        update.accept(CHANNEL_BUS_UTILIZATION, new DecimalType(Math.round(metrics.getUtilization() * 10) / 10.0));
+        long answerTime = metrics.getAnswerTime95();
+        if (answerTime == Long.MAX_VALUE) {
+            // slower than the last histogram bucket, the channel shows its bound instead of losing the value
+            long[] buckets = MercuryEnergyMeterMetrics.ANSWER_TIME_BUCKETS;
+            answerTime = buckets[buckets.length - 1];
+        }
+        update.accept(CHANNEL_ANSWER_TIME, answerTime == 0 ? UnDefType.UNDEF : new DecimalType(answerTime));
+        update.accept(CHANNEL_ANSWER_TIMES, new StringType(metrics.getAnswerTimes()));
+        update.accept(CHANNEL_POLL_CYCLE, new DecimalType(metrics.getMaxPollCycle()));
+    }
+}
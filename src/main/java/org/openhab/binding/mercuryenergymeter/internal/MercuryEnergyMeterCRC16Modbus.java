@@ -67,6 +67,17 @@ public class MercuryEnergyMeterCRC16Modbus implements Checksum {
         sum = (sum >> 8) ^ TABLE[((sum) ^ (b & 0xff)) & 0xff];
     }
 
+    /**
+     * CRC16 of the given bytes without creating a checksum object
+     */
+    public static int compute(byte[] b, int off, int len) {
+        int crc = 0xFFFF;
+        for (int i = off; i < off + len; i++) {
+            crc = (crc >> 8) ^ TABLE[(crc ^ (b[i] & 0xff)) & 0xff];
+        }
+        return crc;
+    }
+
     public byte[] getCrcBytes() {
         long crc = (int) this.getValue();
         byte[] byteStr = new byte[2];
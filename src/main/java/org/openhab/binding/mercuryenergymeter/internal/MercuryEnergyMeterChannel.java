@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterBindingConstants.*;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link MercuryEnergyMeterChannel} describes how the value of a channel is read from the energy meter: request
+ * bytes after the network address, answer length, position and size of the value in the answer, mask of the high
+ * byte and decimal scale. Instantaneous values also have a multi-phase request (0x08 0x16) which returns all phases
+ * of the quantity at once. Power is read as P (BWRI 0x00-0x03), Q (0x04-0x07) and S (0x08-0x0B), direction bits in
+ * the high byte of powers and power factors are masked.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public enum MercuryEnergyMeterChannel {
+    VOLTAGE_1(CHANNEL_VOLTAGE_1, 0x11, 0xFF, 2, 0x11, 12, 1),
+    VOLTAGE_2(CHANNEL_VOLTAGE_2, 0x12, 0xFF, 2, 0x11, 12, 4),
+    VOLTAGE_3(CHANNEL_VOLTAGE_3, 0x13, 0xFF, 2, 0x11, 12, 7),
+    CURRENT_1(CHANNEL_CURRENT_1, 0x21, 0xFF, 3, 0x21, 12, 1),
+    CURRENT_2(CHANNEL_CURRENT_2, 0x22, 0xFF, 3, 0x21, 12, 4),
+    CURRENT_3(CHANNEL_CURRENT_3, 0x23, 0xFF, 3, 0x21, 12, 7),
+    POWER_TOTAL(CHANNEL_POWER_ACTIVE_TOTAL, 0x00, 0x3F, 2, 0x00, 15, 1),
+    POWER_1(CHANNEL_POWER_1, 0x01, 0x3F, 2, 0x00, 15, 4),
+    POWER_2(CHANNEL_POWER_2, 0x02, 0x3F, 2, 0x00, 15, 7),
+    POWER_3(CHANNEL_POWER_3, 0x03, 0x3F, 2, 0x00, 15, 10),
+    REACTIVE_POWER_TOTAL(CHANNEL_REACTIVE_POWER_TOTAL, 0x04, 0x3F, 2, 0x04, 15, 1),
+    REACTIVE_POWER_1(CHANNEL_REACTIVE_POWER_1, 0x05, 0x3F, 2, 0x04, 15, 4),
+    REACTIVE_POWER_2(CHANNEL_REACTIVE_POWER_2, 0x06, 0x3F, 2, 0x04, 15, 7),
+    REACTIVE_POWER_3(CHANNEL_REACTIVE_POWER_3, 0x07, 0x3F, 2, 0x04, 15, 10),
+    APPARENT_POWER_TOTAL(CHANNEL_APPARENT_POWER_TOTAL, 0x08, 0x3F, 2, 0x08, 15, 1),
+    APPARENT_POWER_1(CHANNEL_APPARENT_POWER_1, 0x09, 0x3F, 2, 0x08, 15, 4),
+    APPARENT_POWER_2(CHANNEL_APPARENT_POWER_2, 0x0A, 0x3F, 2, 0x08, 15, 7),
+    APPARENT_POWER_3(CHANNEL_APPARENT_POWER_3, 0x0B, 0x3F, 2, 0x08, 15, 10),
+    POWER_FACTOR_TOTAL(CHANNEL_POWER_FACTOR_TOTAL, 0x30, 0x3F, 3, 0x30, 15, 1),
+    POWER_FACTOR_1(CHANNEL_POWER_FACTOR_1, 0x31, 0x3F, 3, 0x30, 15, 4),
+    POWER_FACTOR_2(CHANNEL_POWER_FACTOR_2, 0x32, 0x3F, 3, 0x30, 15, 7),
+    POWER_FACTOR_3(CHANNEL_POWER_FACTOR_3, 0x33, 0x3F, 3, 0x30, 15, 10),
+    FREQUENCY(CHANNEL_FREQUENCY, 0x40, 0xFF, 2, -1, 0, 0),
+    ENERGY_ACTIVE_TOTAL(CHANNEL_ENERGY_ACTIVE_TOTAL, 0, 1),
+    ENERGY_ACTIVE_EXPORT_TOTAL(CHANNEL_ENERGY_ACTIVE_EXPORT_TOTAL, 0, 5),
+    ENERGY_REACTIVE_TOTAL(CHANNEL_ENERGY_REACTIVE_TOTAL, 0, 9),
+    ENERGY_REACTIVE_EXPORT_TOTAL(CHANNEL_ENERGY_REACTIVE_EXPORT_TOTAL, 0, 13),
+    ENERGY_ACTIVE_1(CHANNEL_ENERGY_1, 1, 1),
+    ENERGY_ACTIVE_EXPORT_1(CHANNEL_ENERGY_ACTIVE_EXPORT_1, 1, 5),
+    ENERGY_REACTIVE_1(CHANNEL_ENERGY_REACTIVE_1, 1, 9),
+    ENERGY_REACTIVE_EXPORT_1(CHANNEL_ENERGY_REACTIVE_EXPORT_1, 1, 13),
+    ENERGY_ACTIVE_2(CHANNEL_ENERGY_2, 2, 1),
+    ENERGY_ACTIVE_EXPORT_2(CHANNEL_ENERGY_ACTIVE_EXPORT_2, 2, 5),
+    ENERGY_REACTIVE_2(CHANNEL_ENERGY_REACTIVE_2, 2, 9),
+    ENERGY_REACTIVE_EXPORT_2(CHANNEL_ENERGY_REACTIVE_EXPORT_2, 2, 13),
+    ENERGY_ACTIVE_3(CHANNEL_ENERGY_3, 3, 1),
+    ENERGY_ACTIVE_EXPORT_3(CHANNEL_ENERGY_ACTIVE_EXPORT_3, 3, 5),
+    ENERGY_REACTIVE_3(CHANNEL_ENERGY_REACTIVE_3, 3, 9),
+    ENERGY_REACTIVE_EXPORT_3(CHANNEL_ENERGY_REACTIVE_EXPORT_3, 3, 13);
+
+    /**
+     * Energy meter fills registers it does not support with 0xFF
+     */
+    public static final long NOT_SUPPORTED = 0xFFFFFFFFL;
+
+    public final String id;
+    public final boolean energy;
+    public final int[] request;
+    public final int answerLength;
+    public final int offset;
+    /**
+     * 3 bytes: high, low, middle. 4 bytes: 2, 1, 4, 3
+     */
+    public final int size;
+    public final int mask;
+    public final int scale;
+    public final int @Nullable [] groupRequest;
+    public final int groupAnswerLength;
+    public final int groupOffset;
+    /**
+     * Phase 1-3 of the value, 0 for totals, frequency and energy registers
+     */
+    public final int phase;
+
+    /**
+     * Auxiliary parameter read with 0x08 0x11, grouped with the other phases by 0x08 0x16 unless groupBwri is negative
+     */
+    MercuryEnergyMeterChannel(String id, int bwri, int mask, int scale, int groupBwri, int groupAnswerLength,
+            int groupOffset) {
+        this.id = id;
+        this.energy = false;
+        this.request = new int[] { 0x08, 0x11, bwri };
+        this.answerLength = 6;
+        this.offset = 1;
+        this.size = 3;
+        this.mask = mask;
+        this.scale = scale;
+        this.groupRequest = groupBwri < 0 ? null : new int[] { 0x08, 0x16, groupBwri };
+        this.groupAnswerLength = groupAnswerLength;
+        this.groupOffset = groupOffset;
+        // powers have P, Q and S in the upper bits of the low nibble
+        this.phase = bwri < 0x10 ? bwri & 0x03 : bwri & 0x0F;
+    }
+
+    /**
+     * Energy register read with 0x05, tariff 0 is the total
+     */
+    MercuryEnergyMeterChannel(String id, int tariff, int offset) {
+        this.id = id;
+        this.energy = true;
+        this.request = new int[] { 0x05, 0x00, tariff };
+        this.answerLength = 19;
+        this.offset = offset;
+        this.size = 4;
+        this.mask = 0xFF;
+        this.scale = 3;
+        this.groupRequest = null;
+        this.groupAnswerLength = 0;
+        this.groupOffset = 0;
+        this.phase = 0;
+    }
+
+    /**
+     * Energy registers A- and R-
+     */
+    public boolean isExport() {
+        return energy && (offset == 5 || offset == 13);
+    }
+
+    /**
+     * Factor from the secondary side, which the energy meter measures, to the primary side of the instrument
+     * transformers: voltage by the voltage ratio, current by the current ratio, power and energy by both. Power factor
+     * and frequency do not change. An unknown ratio (0) counts as 1.
+     */
+    public long ratio(int voltageRatio, int currentRatio) {
+        long voltage = Math.max(voltageRatio, 1);
+        long current = Math.max(currentRatio, 1);
+        int bwri = request[2];
+        if (energy || bwri < 0x10) {
+            return voltage * current;
+        }
+        switch (bwri & 0xF0) {
+            case 0x10:
+                return voltage;
+            case 0x20:
+                return current;
+            default:
+                return 1;
+        }
+    }
+
+    public long decode(byte[] frame, int off) {
+        return size == 4 ? MercuryEnergyMeterCodec.decode4(frame, off)
+                : MercuryEnergyMeterCodec.decode3(frame, off, mask);
+    }
+
+    public static @Nullable MercuryEnergyMeterChannel fromId(String id) {
+        for (MercuryEnergyMeterChannel channel : values()) {
+            if (channel.id.equals(id)) {
+                return channel;
+            }
+        }
+        return null;
+    }
+}
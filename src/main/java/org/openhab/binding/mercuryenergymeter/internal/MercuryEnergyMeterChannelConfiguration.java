@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link MercuryEnergyMeterChannelConfiguration} class contains fields mapping channel configuration parameters.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterChannelConfiguration {
+
+    /**
+     * Smallest change in channel units which is published
+     */
+    public double deadband = 0;
+    /**
+     * Smallest change in percent of the last published value which is published
+     */
+    public double deadbandPercent = 0;
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link MercuryEnergyMeterCircuitBreaker} keeps a silent energy meter from wasting line time. After
+ * {@link #FAILURE_THRESHOLD} exchanges in a row without a valid answer the breaker opens and requests to the address
+ * fail at once. When the open time is over, a single trial request is let through: an answer closes the breaker,
+ * silence opens it again for twice the time, up to {@link #MAX_OPEN_TIME}.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterCircuitBreaker {
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long MIN_OPEN_TIME = TimeUnit.SECONDS.toNanos(5);
+    private static final long MAX_OPEN_TIME = TimeUnit.MINUTES.toNanos(5);
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        /**
+         * Open time is over and the trial request is on the bus
+         */
+        HALF_OPEN
+    }
+
+    private final LongSupplier clock;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openTime;
+    private long openUntil;
+
+    public MercuryEnergyMeterCircuitBreaker() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * @param clock time in nanoseconds like {@link System#nanoTime()}
+     */
+    MercuryEnergyMeterCircuitBreaker(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if the request may go to the line, false if it has to fail without being sent
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.getAsLong() - openUntil >= 0) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Energy meter sent a frame with valid CRC
+     */
+    public synchronized void success() {
+        state = State.CLOSED;
+        failures = 0;
+        openTime = 0;
+    }
+
+    /**
+     * Energy meter did not answer or the answer was corrupted
+     */
+    public synchronized void failure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= FAILURE_THRESHOLD) {
+            openTime = openTime == 0 ? MIN_OPEN_TIME : Math.min(openTime * 2, MAX_OPEN_TIME);
+            openUntil = clock.getAsLong() + openTime;
+            state = State.OPEN;
+        }
+    }
+
+    /**
+     * Trial transaction was cancelled before it reached the line
+     */
+    public synchronized void cancelTrial() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+    }
+
+    public synchronized boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    /**
+     * Seconds until the next trial request, 0 if the breaker is not open
+     */
+    public synchronized long getRetryIn() {
+        return state == State.OPEN ? Math.max(0, TimeUnit.NANOSECONDS.toSeconds(openUntil - clock.getAsLong())) : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return state + ", failures " + failures + ", open for " + TimeUnit.NANOSECONDS.toSeconds(openTime) + " s";
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import java.math.BigDecimal;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.library.types.DecimalType;
+
+/**
+ * The {@link MercuryEnergyMeterCodec} encodes requests into a buffer owned by the bridge and decodes answers of the
+ * energy meter without intermediate objects. An instance is not thread safe: the bridge encodes only while it holds
+ * the bus, one request at a time, and sends the request straight from the buffer before the next one overwrites it.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterCodec {
+    private static final int MAX_REQUEST_LENGTH = 32;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final byte[] request = new byte[MAX_REQUEST_LENGTH];
+    private final MercuryEnergyMeterCRC16Modbus crc = new MercuryEnergyMeterCRC16Modbus();
+
+    /**
+     * Writes request bytes followed by CRC16 (low byte first) into the request buffer
+     *
+     * @return length of the encoded request
+     */
+    public int encode(int[] data) {
+        crc.reset();
+        for (int i = 0; i < data.length; i++) {
+            request[i] = (byte) data[i];
+            crc.update(data[i]);
+        }
+        int sum = (int) crc.getValue();
+        request[data.length] = (byte) (sum & 0xFF);
+        request[data.length + 1] = (byte) ((sum >>> 8) & 0xFF);
+        return data.length + 2;
+    }
+
+    public byte[] getRequest() {
+        return request;
+    }
+
+    /**
+     * Checks the CRC16 in the last two bytes of the frame. Answers hold only the received bytes, so a short status
+     * frame never passes as a longer answer.
+     */
+    public static boolean isValid(byte[] frame, int length) {
+        if (frame.length < length || length < 3) {
+            return false;
+        }
+        int sum = MercuryEnergyMeterCRC16Modbus.compute(frame, 0, length - 2);
+        return frame[length - 2] == (byte) (sum & 0xFF) && frame[length - 1] == (byte) ((sum >>> 8) & 0xFF);
+    }
+
+    /**
+     * Value of 3 bytes: high byte (masked to drop direction bits), low byte, middle byte
+     */
+    public static int decode3(byte[] frame, int off, int mask) {
+        return ((frame[off] & mask) << 16) | ((frame[off + 2] & 0xFF) << 8) | (frame[off + 1] & 0xFF);
+    }
+
+    /**
+     * Value of 4 bytes in the order 2, 1, 4, 3
+     */
+    public static long decode4(byte[] frame, int off) {
+        return ((frame[off + 1] & 0xFFL) << 24) | ((frame[off] & 0xFFL) << 16) | ((frame[off + 3] & 0xFFL) << 8)
+                | (frame[off + 2] & 0xFFL);
+    }
+
+    /**
+     * Fixed point value, e.g. raw 22150 with scale 2 is 221.50
+     */
+    public static DecimalType toState(long raw, int scale) {
+        return new DecimalType(BigDecimal.valueOf(raw, scale));
+    }
+
+    /**
+     * Hex dump for the debug log, call it only if debug is enabled
+     */
+    public static String toHex(byte[] frame, int length) {
+        char[] chars = new char[length * 3];
+        for (int i = 0; i < length; i++) {
+            chars[i * 3] = HEX[(frame[i] >> 4) & 0x0F];
+            chars[i * 3 + 1] = HEX[frame[i] & 0x0F];
+            chars[i * 3 + 2] = ' ';
+        }
+        return new String(chars);
+    }
+}
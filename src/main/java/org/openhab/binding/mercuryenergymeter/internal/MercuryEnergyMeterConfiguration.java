@@ -26,7 +26,17 @@ public class MercuryEnergyMeterConfiguration {
      * Sample configuration parameters. Replace with your own.
      */
     public String serialPort = "";
-    public int pollPeriod = 10;
+    public String host = "";
+    public int port = 4001;
+    public int pollPeriod = 60;
+    public int energyPollPeriod = 300;
+    public int profilePollPeriod = 1800;
+    public int aggregationWindow = 60;
     public int portSpeed = 9600;
     public int userpassword;
+    public int plausibilityLimit = 0;
+    public int maxSilence = 300;
+    public int networkAddress = 0;
+    public boolean snapshot = false;
+    public int fixationPeriod = 0;
 }
@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link MercuryEnergyMeterFrameReceiver} finds the energy meter answer in the bytes delivered by the transport
+ * and notifies the running exchange as soon as the frame is complete. Bytes are kept in a ring buffer and a frame
+ * is recognized by the network address and a valid CRC, either a short status frame or the full answer. Bytes that
+ * cannot start such a frame (noise, the rest of a late answer) are dropped one by one until the frame boundary is
+ * found again. The echo of the request, sent back by RS485 adapters which hear their own transmitter, is dropped
+ * as a whole. A request which could be its own answer (the test command is answered with the same bytes) is taken
+ * for an echo only if the line is known to echo. This is learned from the other requests, e.g. the connection test
+ * to address 0, which no energy meter answers with address 0.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterFrameReceiver {
+    /**
+     * Short answer with the status byte only, sent by energy meter on errors
+     */
+    public static final int STATUS_FRAME_LENGTH = 4;
+    private static final int MAX_FRAME_LENGTH = 256;
+    /**
+     * Power of two, room for an echo, an answer and some noise
+     */
+    private static final int CAPACITY = 1024;
+    private static final int MASK = CAPACITY - 1;
+
+    private final byte[] ring = new byte[CAPACITY];
+    private int head;
+    private int count;
+    private final byte[] echo = new byte[MAX_FRAME_LENGTH];
+    private int echoLength;
+    private boolean echoing;
+    private boolean echoDropped;
+    private final byte[] answer = new byte[MAX_FRAME_LENGTH];
+    private int answerLength;
+    private int address;
+    private int expected;
+    private int discarded;
+    private boolean waiting;
+    private long completedAt;
+    private @Nullable Runnable listener;
+
+    /**
+     * Prepares receiver for the next transaction. Must be called before the request is written to the port,
+     * all bytes left from previous transaction are dropped.
+     *
+     * @param request frame as it is written to the line, to recognize its echo
+     * @param listener is called once by the thread delivering the last byte of the frame, it must not block
+     */
+    public synchronized void expect(byte[] request, int requestLength, int length, Runnable listener) {
+        head = 0;
+        count = 0;
+        address = request[0] & 0xFF;
+        echoLength = Math.min(requestLength, MAX_FRAME_LENGTH);
+        System.arraycopy(request, 0, echo, 0, echoLength);
+        expected = Math.max(Math.min(length, MAX_FRAME_LENGTH), STATUS_FRAME_LENGTH);
+        answerLength = 0;
+        discarded = 0;
+        echoDropped = false;
+        waiting = true;
+        completedAt = 0;
+        this.listener = listener;
+    }
+
+    public synchronized void onData(byte[] data, int off, int len) {
+        if (!waiting) {
+            return;
+        }
+        for (int i = 0; i < len; i++) {
+            if (count == CAPACITY) {
+                drop(1);
+                discarded++;
+            }
+            ring[(head + count++) & MASK] = data[off + i];
+        }
+        scan();
+        if (answerLength > 0) {
+            completedAt = System.nanoTime();
+            waiting = false;
+            Runnable completed = listener;
+            listener = null;
+            if (completed != null) {
+                completed.run();
+            }
+        }
+    }
+
+    /**
+     * Moves the head to the next frame boundary and takes the answer if it is complete
+     */
+    private void scan() {
+        while (count > 0) {
+            // the energy meter answers a request to address 0 with its own address
+            if (address != 0 && (ring[head] & 0xFF) != address) {
+                drop(1);
+                discarded++;
+                continue;
+            }
+            int matching = echoPrefix();
+            if (matching == echoLength && !echoDropped && (echoing || !isAnswerLike())) {
+                drop(echoLength);
+                echoing = true;
+                echoDropped = true;
+                continue;
+            }
+            int length = frameLength();
+            if (length > 0) {
+                copy(answer, length);
+                answerLength = length;
+                drop(length);
+                if (!echoDropped && !isAnswerLike()) {
+                    // the answer came without echo
+                    echoing = false;
+                }
+                return;
+            }
+            if (length == 0 || matching == count) {
+                // wait for more bytes
+                return;
+            }
+            drop(1);
+            discarded++;
+        }
+    }
+
+    /**
+     * @return number of bytes at the head which are equal to the request
+     */
+    private int echoPrefix() {
+        int length = Math.min(count, echoLength);
+        for (int i = 0; i < length; i++) {
+            if (ring[(head + i) & MASK] != echo[i]) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Request frame has a valid CRC, it could be the answer if it has the length of one. Energy meters answer
+     * requests to address 0 with their own address.
+     */
+    private boolean isAnswerLike() {
+        return address != 0 && (echoLength == expected || echoLength == STATUS_FRAME_LENGTH);
+    }
+
+    /**
+     * @return length of the valid frame at the head, 0 if more bytes are needed, -1 if no frame starts here
+     */
+    private int frameLength() {
+        if (count >= STATUS_FRAME_LENGTH && isValid(STATUS_FRAME_LENGTH)) {
+            return STATUS_FRAME_LENGTH;
+        }
+        if (count < expected) {
+            return 0;
+        }
+        return isValid(expected) ? expected : -1;
+    }
+
+    private boolean isValid(int length) {
+        copy(answer, length);
+        return MercuryEnergyMeterCodec.isValid(answer, length);
+    }
+
+    private void copy(byte[] frame, int length) {
+        int first = Math.min(length, CAPACITY - head);
+        System.arraycopy(ring, head, frame, 0, first);
+        System.arraycopy(ring, 0, frame, first, length - first);
+    }
+
+    private void drop(int length) {
+        head = (head + length) & MASK;
+        count -= length;
+    }
+
+    /**
+     * Stops waiting, complete or not, and copies the answer to the frame array. Without a complete answer the bytes
+     * received since the last frame boundary are copied. Bytes arriving later are dropped until the next
+     * {@link #expect(byte[], int, int, Runnable)}.
+     *
+     * @return number of received bytes
+     */
+    public synchronized int take(byte[] frame) {
+        waiting = false;
+        listener = null;
+        if (answerLength > 0) {
+            int length = Math.min(answerLength, frame.length);
+            System.arraycopy(answer, 0, frame, 0, length);
+            return length;
+        }
+        int length = Math.min(count, frame.length);
+        copy(frame, length);
+        return length;
+    }
+
+    /**
+     * Bytes dropped as noise since the last {@link #expect(byte[], int, int, Runnable)}, echo is not counted
+     */
+    public synchronized int getDiscarded() {
+        return discarded;
+    }
+
+    /**
+     * Time of {@link System#nanoTime()} when the last awaited frame was complete, 0 if it was not
+     */
+    public synchronized long getCompletedAt() {
+        return completedAt;
+    }
+
+    /**
+     * Time in nanoseconds to transfer the bytes at given port speed. Every byte takes 10 bits on the line
+     * (start, 8 data bits, stop).
+     */
+    public static long transferTime(int bytes, int portSpeed) {
+        return bytes * 10L * 1_000_000_000L / Math.max(portSpeed, 1);
+    }
+}
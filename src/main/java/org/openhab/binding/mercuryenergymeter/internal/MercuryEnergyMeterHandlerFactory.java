@@ -18,6 +18,7 @@ import java.util.Set;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.i18n.TimeZoneProvider;
 import org.openhab.core.io.transport.serial.SerialPortManager;
 import org.openhab.core.thing.Bridge;
 import org.openhab.core.thing.Thing;
@@ -27,6 +28,7 @@ import org.openhab.core.thing.binding.ThingHandler;
 import org.openhab.core.thing.binding.ThingHandlerFactory;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 
 /**
@@ -39,12 +41,22 @@ import org.osgi.service.component.annotations.Reference;
 @Component(configurationPid = "binding.mercuryenergymeter", service = ThingHandlerFactory.class)
 public class MercuryEnergyMeterHandlerFactory extends BaseThingHandlerFactory {
 
-    private static final Set<ThingTypeUID> SUPPORTED_THING_TYPES_UIDS = Set.of(RS485_BRIDGE, MERCURY_POWERMETER_THING);
+    private static final Set<ThingTypeUID> SUPPORTED_THING_TYPES_UIDS = Set.of(RS485_BRIDGE, TCP_BRIDGE,
+            MERCURY_POWERMETER_THING);
     private final SerialPortManager serialPortManager;
+    private final TimeZoneProvider timeZoneProvider;
+    private final MercuryEnergyMeterTcpSelector tcpSelector = new MercuryEnergyMeterTcpSelector();
 
     @Activate
-    public MercuryEnergyMeterHandlerFactory(@Reference SerialPortManager serialPortManager) {
+    public MercuryEnergyMeterHandlerFactory(@Reference SerialPortManager serialPortManager,
+            @Reference TimeZoneProvider timeZoneProvider) {
         this.serialPortManager = serialPortManager;
+        this.timeZoneProvider = timeZoneProvider;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        tcpSelector.close();
     }
 
     @Override
@@ -59,8 +71,11 @@ public class MercuryEnergyMeterHandlerFactory extends BaseThingHandlerFactory {
         if (RS485_BRIDGE.equals(thingTypeUID)) {
             return new MercuryEnergyMeterRS485BridgeHandler((Bridge) thing, serialPortManager);
         }
+        if (TCP_BRIDGE.equals(thingTypeUID)) {
+            return new MercuryEnergyMeterTcpBridgeHandler((Bridge) thing, tcpSelector);
+        }
         if (MERCURY_POWERMETER_THING.equals(thingTypeUID)) {
-            return new MercuryEnergyMeter203tdHandler(thing);
+            return new MercuryEnergyMeter203tdHandler(thing, timeZoneProvider);
         }
 
         return null;
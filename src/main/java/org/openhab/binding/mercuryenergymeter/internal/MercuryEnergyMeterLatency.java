@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link MercuryEnergyMeterLatency} keeps a rolling estimate of the time one energy meter needs to start
+ * answering, without the line time of the frames. Average and deviation are smoothed like the TCP round trip
+ * estimator, the answer timeout is the average plus four deviations.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterLatency {
+    /**
+     * Used until the first answer is measured
+     */
+    static final long DEFAULT_DELAY = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MIN_DELAY = TimeUnit.MILLISECONDS.toNanos(15);
+    private static final long MAX_DELAY = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    private double average;
+    private double deviation;
+    private long last;
+    private long samples;
+    private long timeouts;
+
+    public synchronized void update(long nanos) {
+        long sample = Math.max(nanos, 0);
+        if (samples == 0) {
+            average = sample;
+            deviation = sample / 2.0;
+        } else {
+            deviation += (Math.abs(sample - average) - deviation) / 4;
+            average += (sample - average) / 8;
+        }
+        last = sample;
+        samples++;
+    }
+
+    /**
+     * Energy meter did not answer in time, widen the window for the next requests
+     */
+    public synchronized void timeout() {
+        timeouts++;
+        if (samples > 0) {
+            deviation = Math.min(deviation * 2 + MIN_DELAY, MAX_DELAY);
+        }
+    }
+
+    /**
+     * Time in nanoseconds to wait for the first byte of the answer
+     */
+    public synchronized long getAnswerDelay() {
+        if (samples == 0) {
+            return DEFAULT_DELAY;
+        }
+        return Math.max(MIN_DELAY, Math.min(MAX_DELAY, (long) (average + 4 * deviation)));
+    }
+
+    /**
+     * Jitter of the energy meter in nanoseconds. Late bytes of a previous answer arrive within this time, so it is
+     * added to the silent interval before the next request.
+     */
+    public synchronized long getJitter() {
+        return (long) deviation;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("avg %.1f ms, dev %.1f ms, last %.1f ms, timeout %d ms, answers %d, timeouts %d",
+                average / 1e6, deviation / 1e6, last / 1e6, TimeUnit.NANOSECONDS.toMillis(getAnswerDelay()), samples,
+                timeouts);
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterBindingConstants.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterTransaction.Priority;
+import org.openhab.core.thing.Thing;
+
+/**
+ * The {@link MercuryEnergyMeterMetadata} holds what does not change during the life of an energy meter: serial
+ * number, variant, meter constant and transformer ratios. It is read once and kept in the thing properties, so a
+ * restart does not wait for the bus. Unknown values are empty or 0.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterMetadata {
+    /**
+     * Address, 4 bytes serial number, 3 bytes release date and CRC
+     */
+    private static final int SERIAL_NUMBER_LENGTH = 10;
+    /**
+     * Address, 6 bytes variant and CRC
+     */
+    private static final int VARIANT_LENGTH = 9;
+    /**
+     * Address, voltage and current transformer ratio with 2 bytes each and CRC
+     */
+    private static final int RATIO_LENGTH = 7;
+    /**
+     * Meter constant in pulses per kWh by the low nibble of the second byte of the variant
+     */
+    private static final int[] CONSTANTS = { 5000, 25000, 1250, 500, 1000, 250 };
+    /**
+     * Second byte of the variant: energy is measured in one direction only
+     */
+    private static final int UNIDIRECTIONAL = 0x80;
+    /**
+     * Third byte of the variant: single phase energy meter
+     */
+    private static final int SINGLE_PHASE = 0x80;
+    /**
+     * Thing properties written by {@link #toProperties(Map)}
+     */
+    public static final List<String> PROPERTIES = List.of(Thing.PROPERTY_SERIAL_NUMBER, PROPERTY_VARIANT,
+            PROPERTY_METER_CONSTANT, PROPERTY_VOLTAGE_RATIO, PROPERTY_CURRENT_RATIO);
+
+    public final String serialNumber;
+    /**
+     * Variant bytes in hex
+     */
+    public final String variant;
+    public final int constant;
+    public final int voltageRatio;
+    public final int currentRatio;
+    private final int[] variantBytes;
+
+    public MercuryEnergyMeterMetadata(String serialNumber, String variant, int constant, int voltageRatio,
+            int currentRatio) {
+        this.serialNumber = serialNumber;
+        this.variant = variant;
+        this.constant = constant;
+        this.voltageRatio = voltageRatio;
+        this.currentRatio = currentRatio;
+        this.variantBytes = parseVariant(variant);
+    }
+
+    /**
+     * Values which the energy meter cannot measure by its variant. Everything is supported while the variant is
+     * unknown, requests the meter rejects anyway are sorted out by the handler.
+     */
+    public boolean supports(MercuryEnergyMeterChannel channel) {
+        if (variantBytes.length < 3) {
+            return true;
+        }
+        if ((variantBytes[2] & SINGLE_PHASE) != 0 && channel.phase > 1) {
+            return false;
+        }
+        return (variantBytes[1] & UNIDIRECTIONAL) == 0 || !channel.isExport();
+    }
+
+    /**
+     * True if all values are known, otherwise the missing ones are read again
+     */
+    public boolean isComplete() {
+        return !serialNumber.isEmpty() && !variant.isEmpty() && constant > 0 && voltageRatio > 0 && currentRatio > 0;
+    }
+
+    public static MercuryEnergyMeterMetadata fromProperties(Map<String, String> properties) {
+        return new MercuryEnergyMeterMetadata(properties.getOrDefault(Thing.PROPERTY_SERIAL_NUMBER, ""),
+                properties.getOrDefault(PROPERTY_VARIANT, ""), parse(properties.get(PROPERTY_METER_CONSTANT)),
+                parse(properties.get(PROPERTY_VOLTAGE_RATIO)), parse(properties.get(PROPERTY_CURRENT_RATIO)));
+    }
+
+    /**
+     * Puts the known values to the properties and removes the unknown ones
+     */
+    public void toProperties(Map<String, String> properties) {
+        put(properties, Thing.PROPERTY_SERIAL_NUMBER, serialNumber);
+        put(properties, PROPERTY_VARIANT, variant);
+        put(properties, PROPERTY_METER_CONSTANT, constant > 0 ? Integer.toString(constant) : "");
+        put(properties, PROPERTY_VOLTAGE_RATIO, voltageRatio > 0 ? Integer.toString(voltageRatio) : "");
+        put(properties, PROPERTY_CURRENT_RATIO, currentRatio > 0 ? Integer.toString(currentRatio) : "");
+    }
+
+    /**
+     * Reads the values missing in the known metadata with low priority, so a value the energy meter once failed to
+     * answer costs only its own request. Known values are kept, values which cannot be read stay unknown.
+     */
+    public static CompletableFuture<MercuryEnergyMeterMetadata> read(MercuryEnergyMeterBridgeHandler bridge,
+            int address, int password, MercuryEnergyMeterMetadata known) {
+        CompletableFuture<byte[]> variant = known.variant.isEmpty() || known.constant == 0
+                ? bridge.submit(new int[] { address, 0x08, 0x12 }, VARIANT_LENGTH, password, Priority.LOW)
+                : CompletableFuture.completedFuture(new byte[0]);
+        CompletableFuture<byte[]> ratios = known.voltageRatio == 0 || known.currentRatio == 0
+                ? bridge.submit(new int[] { address, 0x08, 0x02 }, RATIO_LENGTH, password, Priority.LOW)
+                : CompletableFuture.completedFuture(new byte[0]);
+        return CompletableFuture.allOf(variant, ratios).thenApply(done -> {
+            byte[] variantAnswer = variant.join();
+            byte[] ratioAnswer = ratios.join();
+            boolean validVariant = isValid(variantAnswer, address, VARIANT_LENGTH);
+            boolean validRatios = isValid(ratioAnswer, address, RATIO_LENGTH);
+            // variant without address byte
+            String variantHex = validVariant
+                    ? MercuryEnergyMeterCodec.toHex(variantAnswer, VARIANT_LENGTH - 2).substring(3).trim()
+                    : known.variant;
+            return new MercuryEnergyMeterMetadata(known.serialNumber, variantHex,
+                    validVariant ? constantOf(variantAnswer) : known.constant,
+                    validRatios ? ((ratioAnswer[1] & 0xFF) << 8) | (ratioAnswer[2] & 0xFF) : known.voltageRatio,
+                    validRatios ? ((ratioAnswer[3] & 0xFF) << 8) | (ratioAnswer[4] & 0xFF) : known.currentRatio);
+        });
+    }
+
+    /**
+     * Serial number is 4 bytes with two decimal digits each
+     *
+     * @return serial number or empty if it cannot be read
+     */
+    public static CompletableFuture<String> readSerialNumber(MercuryEnergyMeterBridgeHandler bridge, int address,
+            int password) {
+        return bridge.submit(new int[] { address, 0x08, 0x00 }, SERIAL_NUMBER_LENGTH, password, Priority.LOW)
+                .thenApply(answer -> {
+                    if (!isValid(answer, address, SERIAL_NUMBER_LENGTH)) {
+                        return "";
+                    }
+                    return String.format("%02d%02d%02d%02d", answer[1] & 0xFF, answer[2] & 0xFF, answer[3] & 0xFF,
+                            answer[4] & 0xFF);
+                });
+    }
+
+    /**
+     * @return meter constant or 0 if it cannot be read
+     */
+    public static CompletableFuture<Integer> readConstant(MercuryEnergyMeterBridgeHandler bridge, int address,
+            int password) {
+        return bridge.submit(new int[] { address, 0x08, 0x12 }, VARIANT_LENGTH, password, Priority.LOW)
+                .thenApply(answer -> isValid(answer, address, VARIANT_LENGTH) ? constantOf(answer) : 0);
+    }
+
+    private static int constantOf(byte[] variant) {
+        int code = variant[2] & 0x0F;
+        return code < CONSTANTS.length ? CONSTANTS[code] : 0;
+    }
+
+    private static boolean isValid(byte[] answer, int address, int length) {
+        return MercuryEnergyMeterCodec.isValid(answer, length) && (answer[0] & 0xFF) == address;
+    }
+
+    private static void put(Map<String, String> properties, String key, String value) {
+        if (value.isEmpty()) {
+            properties.remove(key);
+        } else {
+            properties.put(key, value);
+        }
+    }
+
+    private static int[] parseVariant(String variant) {
+        if (variant.isEmpty()) {
+            return new int[0];
+        }
+        String[] bytes = variant.split(" ");
+        int[] result = new int[bytes.length];
+        try {
+            for (int i = 0; i < bytes.length; i++) {
+                result[i] = Integer.parseInt(bytes[i], 16);
+            }
+        } catch (NumberFormatException e) {
+            return new int[0];
+        }
+        return result;
+    }
+
+    private static int parse(@Nullable String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "serial number " + serialNumber + ", variant " + variant + ", constant " + constant + ", ratios "
+                + voltageRatio + "/" + currentRatio;
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link MercuryEnergyMeterMetrics} counts exchanges on the bus, either of the whole bridge or of one network
+ * address. Counters are cumulative, bus utilization, answer time percentile and poll cycle are measured over the
+ * window since the previous {@link #report()}.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterMetrics {
+    /**
+     * Upper bounds of the answer time histogram buckets in milliseconds, the last bucket has no upper bound
+     */
+    static final long[] ANSWER_TIME_BUCKETS = { 10, 20, 50, 100, 200, 500, 1000 };
+
+    private final LongAdder transactions = new LongAdder();
+    private final LongAdder crcErrors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder busyTime = new LongAdder();
+    private final AtomicLongArray answerTimes = new AtomicLongArray(ANSWER_TIME_BUCKETS.length + 1);
+    private final LongAccumulator pollCycle = new LongAccumulator(Long::max, 0);
+
+    private final long[] reportedAnswerTimes = new long[ANSWER_TIME_BUCKETS.length + 1];
+    private final long[] windowAnswerTimes = new long[ANSWER_TIME_BUCKETS.length + 1];
+    private long reportedBusyTime;
+    private long reportedAt = System.nanoTime();
+    private double utilization;
+    private long answerTime95;
+    private long maxPollCycle;
+
+    /**
+     * One request was written to the line and the bus was busy for the given time until the answer or timeout
+     */
+    public void transaction(long busyNanos) {
+        transactions.increment();
+        busyTime.add(busyNanos);
+    }
+
+    /**
+     * Complete answer was received after the given time counted from the end of the request
+     */
+    public void answer(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < ANSWER_TIME_BUCKETS.length && millis > ANSWER_TIME_BUCKETS[bucket]) {
+            bucket++;
+        }
+        answerTimes.incrementAndGet(bucket);
+    }
+
+    public void crcError() {
+        crcErrors.increment();
+    }
+
+    /**
+     * No complete answer in time, including port I/O errors
+     */
+    public void timeout() {
+        timeouts.increment();
+    }
+
+    public void retry() {
+        retries.increment();
+    }
+
+    /**
+     * Time all requests of one poll of an energy meter took, including queueing behind other energy meters
+     */
+    public void pollCycle(long nanos) {
+        pollCycle.accumulate(nanos);
+    }
+
+    public long getTransactions() {
+        return transactions.sum();
+    }
+
+    public long getCrcErrors() {
+        return crcErrors.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Closes the measurement window, values of the window are available through the getters until the next call
+     */
+    public synchronized void report() {
+        long now = System.nanoTime();
+        long busy = busyTime.sum();
+        long elapsed = now - reportedAt;
+        utilization = elapsed > 0 ? Math.min(100.0, (busy - reportedBusyTime) * 100.0 / elapsed) : 0;
+        reportedBusyTime = busy;
+        reportedAt = now;
+
+        long[] window = windowAnswerTimes;
+        long count = 0;
+        for (int i = 0; i < window.length; i++) {
+            long total = answerTimes.get(i);
+            window[i] = total - reportedAnswerTimes[i];
+            reportedAnswerTimes[i] = total;
+            count += window[i];
+        }
+        answerTime95 = 0;
+        long seen = 0;
+        for (int i = 0; i < window.length && count > 0; i++) {
+            seen += window[i];
+            if (seen * 100 >= count * 95) {
+                answerTime95 = i < ANSWER_TIME_BUCKETS.length ? ANSWER_TIME_BUCKETS[i] : Long.MAX_VALUE;
+                break;
+            }
+        }
+        maxPollCycle = TimeUnit.NANOSECONDS.toMillis(pollCycle.getThenReset());
+    }
+
+    /**
+     * Share of the window the line was busy with requests and answers, in percent
+     */
+    public synchronized double getUtilization() {
+        return utilization;
+    }
+
+    /**
+     * Upper bound in milliseconds of the histogram bucket holding the 95th percentile of answer times in the window,
+     * {@link Long#MAX_VALUE} if it is above the last bound and 0 without answers
+     */
+    public synchronized long getAnswerTime95() {
+        return answerTime95;
+    }
+
+    /**
+     * Answer time histogram of the window like "<=10 ms: 12, <=20 ms: 3, ... >1000 ms: 0"
+     */
+    public synchronized String getAnswerTimes() {
+        return histogram(windowAnswerTimes);
+    }
+
+    /**
+     * Longest poll cycle of the window in milliseconds
+     */
+    public synchronized long getMaxPollCycle() {
+        return maxPollCycle;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long[] total = new long[reportedAnswerTimes.length];
+        for (int i = 0; i < total.length; i++) {
+            total[i] = answerTimes.get(i);
+        }
+        return String.format(
+                "transactions %d, crc errors %d, timeouts %d, retries %d, utilization %.1f %%, poll cycle %d ms, %s",
+                getTransactions(), getCrcErrors(), getTimeouts(), getRetries(), utilization, maxPollCycle,
+                histogram(total));
+    }
+
+    private static String histogram(long[] counts) {
+        StringBuilder histogram = new StringBuilder();
+        int last = ANSWER_TIME_BUCKETS.length - 1;
+        for (int i = 0; i < counts.length; i++) {
+            histogram.append(i == 0 ? "" : ", ");
+            histogram.append(i <= last ? "<=" + ANSWER_TIME_BUCKETS[i] : ">" + ANSWER_TIME_BUCKETS[last]);
+            histogram.append(" ms: ").append(counts[i]);
+        }
+        return histogram.toString();
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterTransaction.Priority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link MercuryEnergyMeterProfileReader} walks the power profile memory (memory 3) of one energy meter from the
+ * record after the cursor to the newest record. Records are read in blocks of {@link #BLOCK_RECORDS} with request
+ * 0x06 and handed over oldest first. The cursor is the memory address of the last handed record, the handler keeps
+ * it in the thing properties, so reading resumes there after a restart.
+ * <p>
+ * A record takes 16 bytes: status, hour, minute, day, month, year (BCD), integration period in minutes and the pulse
+ * counts of P+, P-, Q+, Q- with 2 bytes each, low byte first. 0xFFFF marks a value that was not recorded.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterProfileReader {
+    private final Logger logger = LoggerFactory.getLogger(MercuryEnergyMeterProfileReader.class);
+
+    public static final int NO_CURSOR = -1;
+    public static final int RECORD_SIZE = 16;
+    public static final int MEMORY_SIZE = 0x10000;
+    private static final int MEMORY = 0x03;
+    private static final int BLOCK_RECORDS = 8;
+    /**
+     * Address of the last record (2 bytes), its header (6 bytes) and integration period
+     */
+    private static final int LAST_RECORD_LENGTH = 12;
+    private static final int NOT_RECORDED = 0xFFFF;
+
+    private final MercuryEnergyMeterBridgeHandler bridge;
+    private final int address;
+    private final int password;
+    private final ZoneId zone;
+    private final Consumer<Record> consumer;
+    private volatile int cursor;
+    private volatile int constant;
+
+    /**
+     * One integration period of the profile, powers are average values in W and var, NaN if not recorded
+     */
+    public static class Record {
+        public final ZonedDateTime time;
+        public final int period;
+        public final double activeImport;
+        public final double activeExport;
+        public final double reactiveImport;
+        public final double reactiveExport;
+
+        Record(ZonedDateTime time, int period, double activeImport, double activeExport, double reactiveImport,
+                double reactiveExport) {
+            this.time = time;
+            this.period = period;
+            this.activeImport = activeImport;
+            this.activeExport = activeExport;
+            this.reactiveImport = reactiveImport;
+            this.reactiveExport = reactiveExport;
+        }
+    }
+
+    public MercuryEnergyMeterProfileReader(MercuryEnergyMeterBridgeHandler bridge, int address, int password,
+            ZoneId zone, int cursor, int constant, Consumer<Record> consumer) {
+        this.bridge = bridge;
+        this.address = address;
+        this.password = password;
+        this.zone = zone;
+        this.cursor = cursor;
+        this.constant = constant;
+        this.consumer = consumer;
+    }
+
+    public int getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Reads all records written since the cursor. Without a cursor only the newest record is read, older records
+     * would be published as stale states of the profile channels.
+     *
+     * @return number of records read, a failed request ends the pass and the next one resumes at the cursor
+     */
+    public CompletableFuture<Integer> read() {
+        return readConstant().thenCompose(known -> {
+            if (!known) {
+                return completed(0);
+            }
+            return bridge.submit(new int[] { address, 0x08, 0x13 }, LAST_RECORD_LENGTH, password, Priority.LOW)
+                    .thenCompose(answer -> {
+                        if (!isValid(answer, LAST_RECORD_LENGTH)) {
+                            logger.debug("Cannot read last profile record of address {}", address);
+                            return completed(0);
+                        }
+                        int last = ((answer[1] & 0xFF) << 8) | (answer[2] & 0xFF);
+                        int count = cursor == NO_CURSOR ? 1 : ((last - cursor) & (MEMORY_SIZE - 1)) / RECORD_SIZE;
+                        int first = (last - (count - 1) * RECORD_SIZE) & (MEMORY_SIZE - 1);
+                        return readBlocks(first, count, 0);
+                    });
+        });
+    }
+
+    /**
+     * Pulses are converted to power with the meter constant, which is read from the variant (0x08 0x12) unless it
+     * was known from the thing properties
+     */
+    private CompletableFuture<Boolean> readConstant() {
+        if (constant > 0) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return MercuryEnergyMeterMetadata.readConstant(bridge, address, password).thenApply(known -> {
+            if (known == 0) {
+                logger.debug("Cannot read meter constant of address {}", address);
+                return false;
+            }
+            constant = known;
+            return true;
+        });
+    }
+
+    private CompletableFuture<Integer> readBlocks(int start, int remaining, int done) {
+        if (remaining <= 0) {
+            return completed(done);
+        }
+        // blocks do not wrap around the end of the memory
+        int records = Math.min(Math.min(remaining, BLOCK_RECORDS), (MEMORY_SIZE - start) / RECORD_SIZE);
+        int length = records * RECORD_SIZE;
+        int[] request = new int[] { address, 0x06, MEMORY, start >> 8, start & 0xFF, length };
+        return bridge.submit(request, length + 3, password, Priority.LOW).thenCompose(answer -> {
+            if (!isValid(answer, length + 3)) {
+                logger.debug("Cannot read profile of address {} at 0x{}", address, Integer.toHexString(start));
+                return completed(done);
+            }
+            for (int i = 0; i < records; i++) {
+                Record record = decode(answer, 1 + i * RECORD_SIZE);
+                if (record != null) {
+                    consumer.accept(record);
+                }
+            }
+            cursor = start + length - RECORD_SIZE;
+            return readBlocks((start + length) & (MEMORY_SIZE - 1), remaining - records, done + records);
+        });
+    }
+
+    /**
+     * @return record at the offset or null if the memory there is empty or the header is not a valid time
+     */
+    private @Nullable Record decode(byte[] frame, int off) {
+        int period = frame[off + 6] & 0xFF;
+        if (period == 0 || period == 0xFF) {
+            return null;
+        }
+        ZonedDateTime time;
+        try {
+            time = ZonedDateTime.of(2000 + bcd(frame[off + 5]), bcd(frame[off + 4]), bcd(frame[off + 3]),
+                    bcd(frame[off + 1]), bcd(frame[off + 2]), 0, 0, zone);
+        } catch (DateTimeException e) {
+            return null;
+        }
+        return new Record(time, period, power(frame, off + 7, period), power(frame, off + 9, period),
+                power(frame, off + 11, period), power(frame, off + 13, period));
+    }
+
+    /**
+     * Average power of the period, memory holds pulses at twice the meter constant
+     */
+    private double power(byte[] frame, int off, int period) {
+        int pulses = (frame[off] & 0xFF) | ((frame[off + 1] & 0xFF) << 8);
+        if (pulses == NOT_RECORDED) {
+            return Double.NaN;
+        }
+        return pulses * 60000.0 / (2.0 * constant * period);
+    }
+
+    /**
+     * @return value of the BCD byte, -1 if it has a nibble above 9
+     */
+    private static int bcd(byte b) {
+        int high = (b >> 4) & 0x0F;
+        int low = b & 0x0F;
+        return high > 9 || low > 9 ? -1 : high * 10 + low;
+    }
+
+    private boolean isValid(byte[] answer, int length) {
+        return MercuryEnergyMeterCodec.isValid(answer, length) && (answer[0] & 0xFF) == address;
+    }
+
+    private static CompletableFuture<Integer> completed(int records) {
+        return CompletableFuture.completedFuture(records);
+    }
+}
@@ -15,7 +15,7 @@ package org.openhab.binding.mercuryenergymeter.internal;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.concurrent.ScheduledFuture;
+import java.util.TooManyListenersException;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -27,40 +27,33 @@ import org.openhab.core.io.transport.serial.SerialPortIdentifier;
 import org.openhab.core.io.transport.serial.SerialPortManager;
 import org.openhab.core.io.transport.serial.UnsupportedCommOperationException;
 import org.openhab.core.thing.Bridge;
-import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.ThingStatus;
 import org.openhab.core.thing.ThingStatusDetail;
-import org.openhab.core.thing.binding.BaseBridgeHandler;
-import org.openhab.core.types.Command;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * The {@link MercuryEnergyMeterRS485BridgeHandler} is responsible for handling commands, which are
- * sent to one of the channels.
+ * The {@link MercuryEnergyMeterRS485BridgeHandler} connects the bus to a local serial port.
  *
  * @author Petr Shatsillo - Initial contribution
  */
 @NonNullByDefault
-public class MercuryEnergyMeterRS485BridgeHandler extends BaseBridgeHandler implements SerialPortEventListener {
+public class MercuryEnergyMeterRS485BridgeHandler extends MercuryEnergyMeterBridgeHandler
+        implements SerialPortEventListener {
 
     private final Logger logger = LoggerFactory.getLogger(MercuryEnergyMeterRS485BridgeHandler.class);
     private @Nullable SerialPort serialPort;
-    private @Nullable InputStream inputStream;
-    private @Nullable OutputStream outputStream;
+    private volatile @Nullable InputStream inputStream;
+    private volatile @Nullable OutputStream outputStream;
     private final SerialPortManager serialPortManager;
 
-    private @Nullable ScheduledFuture<?> pollingTask;
+    private final byte[] readBuffer = new byte[64];
 
     public MercuryEnergyMeterRS485BridgeHandler(Bridge thing, final SerialPortManager serialPortManager) {
         super(thing);
         this.serialPortManager = serialPortManager;
     }
 
-    @Override
-    public void handleCommand(ChannelUID channelUID, Command command) {
-    }
-
     @Override
     public void initialize() {
         MercuryEnergyMeterConfiguration config = getConfigAs(MercuryEnergyMeterConfiguration.class);
@@ -78,6 +71,7 @@ public class MercuryEnergyMeterRS485BridgeHandler extends BaseBridgeHandler impl
             }
 
         }
+        startBus();
         scheduler.execute(this::connect);
     }
 
@@ -94,6 +88,7 @@ public class MercuryEnergyMeterRS485BridgeHandler extends BaseBridgeHandler impl
                 SerialPort serial = portId.open(getThing().getUID().toString(), 2000);
                 serial.setSerialPortParams(config.portSpeed, SerialPort.DATABITS_8, SerialPort.STOPBITS_1,
                         SerialPort.PARITY_NONE);
+                portSpeed = config.portSpeed;
                 try {
                     if (inputStream != null) {
                         inputStream.close();
@@ -112,9 +107,13 @@ public class MercuryEnergyMeterRS485BridgeHandler extends BaseBridgeHandler impl
                 inputStream = serial.getInputStream();
                 outputStream = serial.getOutputStream();
                 serialPort = serial;
+                serial.addEventListener(this);
+                serial.notifyOnDataAvailable(true);
 
                 int[] data = new int[] { 0x00, 0x00 }; // Test connection
-                if (sendPacket(data, 4, 111111)[1] == 0x00) {
+                byte[] answer = sendPacket(data, 4, 111111);
+                // several energy meters answer address 0 at once, so only a valid error status means no connection
+                if (!MercuryEnergyMeterCodec.isValid(answer, 4) || answer[1] == 0x00) {
                     updateStatus(ThingStatus.ONLINE);
                 } else {
                     updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
@@ -130,11 +129,16 @@ public class MercuryEnergyMeterRS485BridgeHandler extends BaseBridgeHandler impl
             } catch (UnsupportedCommOperationException e) {
                 logger.error("{}", e.getMessage());
                 updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.OFFLINE.COMMUNICATION_ERROR, e.getMessage());
+            } catch (TooManyListenersException e) {
+                logger.error("{}", e.getMessage());
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.OFFLINE.COMMUNICATION_ERROR,
+                        "Cannot listen to the port events");
             }
         }
     }
 
-    private boolean isConnected() {
+    @Override
+    protected boolean isConnected() {
         return serialPort != null && inputStream != null && outputStream != null;
     }
 
@@ -143,6 +147,7 @@ public class MercuryEnergyMeterRS485BridgeHandler extends BaseBridgeHandler impl
         if (thing.getStatus() != ThingStatus.REMOVING) {
             updateStatus(ThingStatus.OFFLINE);
         }
+        resetSessions();
         synchronized (this) {
             try {
                 if (inputStream != null) {
@@ -161,6 +166,7 @@ public class MercuryEnergyMeterRS485BridgeHandler extends BaseBridgeHandler impl
 
             SerialPort serial = serialPort;
             if (serial != null) {
+                serial.removeEventListener();
                 serial.close();
             }
             try {
@@ -173,90 +179,44 @@ public class MercuryEnergyMeterRS485BridgeHandler extends BaseBridgeHandler impl
     }
 
     @Override
-    public synchronized void serialEvent(SerialPortEvent serialPortEvent) {
-    }
-
-    public synchronized void stopPolling() {
-        logger.debug("stopping polling");
-        final ScheduledFuture<?> task = pollingTask;
-        if (task != null && !task.isCancelled()) {
-            task.cancel(true);
-            pollingTask = null;
-            logger.debug("polling stop");
+    public void serialEvent(SerialPortEvent serialPortEvent) {
+        if (serialPortEvent.getEventType() != SerialPortEvent.DATA_AVAILABLE) {
+            return;
+        }
+        InputStream in = inputStream;
+        if (in == null) {
+            return;
+        }
+        synchronized (readBuffer) {
+            try {
+                while (in.available() > 0) {
+                    int count = in.read(readBuffer, 0, Math.min(in.available(), readBuffer.length));
+                    if (count <= 0) {
+                        break;
+                    }
+                    receiver.onData(readBuffer, 0, count);
+                }
+            } catch (IOException e) {
+                logger.debug("Error reading from serial port: {}", e.getMessage(), e);
+            }
         }
     }
 
     @Override
     public void dispose() {
         logger.debug("Disposing...");
-        stopPolling();
+        stopBus();
         disconnect();
         super.dispose();
     }
 
-    public byte[] sendPacket(int[] data, int answerLenght, int password) {
-        byte[] answer = new byte[answerLenght];
-        String pwdConv = Integer.toString(password);
-        if (pwdConv.length() == 6) {
-            int[] pswd = new int[pwdConv.length()];
-            for (int i = 0; i < pwdConv.length(); i++) {
-                pswd[i] = Integer.parseInt(String.valueOf(pwdConv.charAt(i)));
-            }
-            // int[] getpass = new int[] { 0x00, 0x01, 0x02, 0x02, 0x02, 0x02, 0x02, 0x02, 0x02 };
-            int[] getpass = new int[] { 0x00, 0x01, 0x01, pswd[0], pswd[1], pswd[2], pswd[3], pswd[4], pswd[5] };
-            byte[] pwdanswer = send(getpass, 4);
-            if (pwdanswer[1] == 0) {
-                answer = send(data, answerLenght);
-            }
-        }
-        return answer;
-    }
-
-    private byte[] send(int[] data, int answerLenght) {
-        MercuryEnergyMeterCRC16Modbus crc = new MercuryEnergyMeterCRC16Modbus();
-        for (int d : data) {
-            crc.update(d);
-        }
-        byte[] byteStr = new byte[2];
-        byteStr[0] = (byte) ((crc.getValue() & 0x000000ff));
-        byteStr[1] = (byte) ((crc.getValue() & 0x0000ff00) >>> 8);
-        byte[] reqestString = new byte[data.length + 2];
-        for (int i = 0; i < data.length; i++) {
-            reqestString[i] = (byte) data[i];
-        }
-        reqestString[reqestString.length - 2] = byteStr[0];
-        reqestString[reqestString.length - 1] = byteStr[1];
-        StringBuilder sb = new StringBuilder(reqestString.length * 2);
-        for (byte b : reqestString)
-            sb.append(String.format("%02X ", b));
-        logger.debug("   send: {}", sb);
-
-        try {
-            OutputStream out = outputStream;
-            if (out != null) {
-                out.write(reqestString);
-                out.flush();
-                Thread.sleep(200);
-            }
-        } catch (IOException | InterruptedException e) {
-
-        }
-
-        byte[] frame = new byte[answerLenght];
-        InputStream in = inputStream;
-        if (in != null) {
-            try {
-                while (in.available() > 0) {
-                    in.read(frame);
-                }
-                StringBuilder sbl = new StringBuilder(frame.length * 2);
-                for (byte b : frame)
-                    sbl.append(String.format("%02X ", b));
-                logger.debug("receive: {}", sbl);
-            } catch (IOException e1) {
-                logger.debug("Error reading from serial port: {}", e1.getMessage(), e1);
-            }
+    @Override
+    protected void write(byte[] request, int length) throws IOException {
+        OutputStream out = outputStream;
+        if (out == null) {
+            throw new IOException("Serial port is closed");
         }
-        return frame;
+        out.write(request, 0, length);
+        out.flush();
     }
 }
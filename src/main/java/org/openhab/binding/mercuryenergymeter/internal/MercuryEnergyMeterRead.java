@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterTransaction.Priority;
+
+/**
+ * The {@link MercuryEnergyMeterRead} is one prepared request of the poll cycle together with the channels decoded
+ * from its answer. Reads are built once from the linked channels, so the poll loop only sends them.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterRead {
+    /**
+     * Auxiliary parameter with the values latched by the last data fixation
+     */
+    private static final int FIXED_DATA = 0x14;
+
+    final int[] request;
+    final int answerLength;
+    final Priority priority;
+    final MercuryEnergyMeterChannel[] channels;
+    final int[] offsets;
+
+    private MercuryEnergyMeterRead(int[] request, int answerLength, Priority priority,
+            List<MercuryEnergyMeterChannel> channels, List<Integer> offsets) {
+        this.request = request;
+        this.answerLength = answerLength;
+        this.priority = priority;
+        this.channels = channels.toArray(new MercuryEnergyMeterChannel[0]);
+        this.offsets = offsets.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * True if the channel is read with its own request, not the multi-phase or fixed data request
+     */
+    boolean isOwnRequest(MercuryEnergyMeterChannel channel) {
+        return Arrays.equals(request, 1, request.length, channel.request, 0, channel.request.length);
+    }
+
+    /**
+     * Builds reads for the given channels. Channels with the same request share one read. Phases of a quantity are
+     * read with the multi-phase request if more than one of them is linked.
+     */
+    public static List<MercuryEnergyMeterRead> plan(int address, Collection<MercuryEnergyMeterChannel> linked) {
+        Map<String, Integer> groupCount = new LinkedHashMap<>();
+        for (MercuryEnergyMeterChannel channel : linked) {
+            int[] groupRequest = channel.groupRequest;
+            if (groupRequest != null) {
+                groupCount.merge(Arrays.toString(groupRequest), 1, Integer::sum);
+            }
+        }
+        Map<String, Builder> builders = new LinkedHashMap<>();
+        for (MercuryEnergyMeterChannel channel : linked) {
+            int[] groupRequest = channel.groupRequest;
+            boolean group = groupRequest != null && groupCount.getOrDefault(Arrays.toString(groupRequest), 0) > 1;
+            int[] request = group && groupRequest != null ? groupRequest : channel.request;
+            Builder builder = builders.computeIfAbsent(Arrays.toString(request),
+                    key -> new Builder(address, request, group ? channel.groupAnswerLength : channel.answerLength,
+                            channel.energy ? Priority.LOW : Priority.HIGH));
+            builder.channels.add(channel);
+            builder.offsets.add(group ? channel.groupOffset : channel.offset);
+        }
+        return build(builders.values());
+    }
+
+    /**
+     * Builds reads of the instantaneous values latched by the data fixation. They are read with 0x08 0x14, which
+     * takes the BWRI and returns all phases of a quantity like 0x08 0x16.
+     */
+    public static List<MercuryEnergyMeterRead> planFixed(int address, Collection<MercuryEnergyMeterChannel> linked) {
+        Map<String, Builder> builders = new LinkedHashMap<>();
+        for (MercuryEnergyMeterChannel channel : linked) {
+            if (channel.energy) {
+                continue;
+            }
+            int[] groupRequest = channel.groupRequest;
+            int[] request = new int[] { 0x08, FIXED_DATA, (groupRequest != null ? groupRequest : channel.request)[2] };
+            Builder builder = builders.computeIfAbsent(Arrays.toString(request),
+                    key -> new Builder(address, request,
+                            groupRequest != null ? channel.groupAnswerLength : channel.answerLength, Priority.HIGH));
+            builder.channels.add(channel);
+            builder.offsets.add(groupRequest != null ? channel.groupOffset : channel.offset);
+        }
+        return build(builders.values());
+    }
+
+    private static List<MercuryEnergyMeterRead> build(Collection<Builder> builders) {
+        List<MercuryEnergyMeterRead> reads = new ArrayList<>(builders.size());
+        for (Builder builder : builders) {
+            reads.add(new MercuryEnergyMeterRead(builder.request, builder.answerLength, builder.priority,
+                    builder.channels, builder.offsets));
+        }
+        return reads;
+    }
+
+    private static class Builder {
+        final int[] request;
+        final int answerLength;
+        final Priority priority;
+        final List<MercuryEnergyMeterChannel> channels = new ArrayList<>();
+        final List<Integer> offsets = new ArrayList<>();
+
+        Builder(int address, int[] request, int answerLength, Priority priority) {
+            this.request = new int[request.length + 1];
+            this.request[0] = address;
+            System.arraycopy(request, 0, this.request, 1, request.length);
+            this.answerLength = answerLength;
+            this.priority = priority;
+        }
+    }
+}
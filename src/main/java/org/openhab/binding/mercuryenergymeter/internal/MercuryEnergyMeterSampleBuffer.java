@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link MercuryEnergyMeterSampleBuffer} keeps the most recent raw samples of one channel in fixed size primitive
+ * arrays. When the buffer is full the oldest sample is overwritten, so memory does not grow with the poll rate.
+ * Aggregates over the last seconds are computed from the buffer without requests to the energy meter.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterSampleBuffer {
+
+    /**
+     * Minimum, maximum, mean and last raw value of the samples in a time window
+     */
+    public static class Aggregate {
+        public final long min;
+        public final long max;
+        public final double mean;
+        public final long last;
+        public final int count;
+
+        Aggregate(long min, long max, double mean, long last, int count) {
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            this.last = last;
+            this.count = count;
+        }
+    }
+
+    private final long[] values;
+    private final long[] times;
+    /**
+     * Index of the next sample to write
+     */
+    private int head;
+    private int size;
+
+    public MercuryEnergyMeterSampleBuffer(int capacity) {
+        values = new long[Math.max(capacity, 1)];
+        times = new long[values.length];
+    }
+
+    /**
+     * @param time of the sample from {@link System#nanoTime()}
+     */
+    public synchronized void add(long time, long value) {
+        values[head] = value;
+        times[head] = time;
+        head = (head + 1) % values.length;
+        if (size < values.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Aggregates the samples taken after the given time, newest first until an older sample is found
+     *
+     * @return aggregate or null if there are no samples in the window
+     */
+    public synchronized @Nullable Aggregate aggregate(long since) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long sum = 0;
+        long last = 0;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int index = (head - 1 - i + values.length) % values.length;
+            if (times[index] - since < 0) {
+                break;
+            }
+            long value = values[index];
+            if (count == 0) {
+                last = value;
+            }
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            count++;
+        }
+        return count == 0 ? null : new Aggregate(min, max, (double) sum / count, last, count);
+    }
+
+    /**
+     * Newest sample if it was taken after the given time
+     */
+    public synchronized @Nullable Long last(long since) {
+        if (size == 0) {
+            return null;
+        }
+        int index = (head - 1 + values.length) % values.length;
+        return times[index] - since < 0 ? null : values[index];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+}
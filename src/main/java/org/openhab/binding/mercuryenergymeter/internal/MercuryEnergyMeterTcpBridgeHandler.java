@@ -0,0 +1,232 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.thing.Bridge;
+import org.openhab.core.thing.ThingStatus;
+import org.openhab.core.thing.ThingStatusDetail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link MercuryEnergyMeterTcpBridgeHandler} connects the bus through a transparent RS485 to Ethernet gateway.
+ * The connection is established and read by the shared {@link MercuryEnergyMeterTcpSelector}, so there is no thread
+ * per gateway and no thread waits for a gateway that does not answer.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterTcpBridgeHandler extends MercuryEnergyMeterBridgeHandler
+        implements MercuryEnergyMeterTcpSelector.Listener {
+
+    private final Logger logger = LoggerFactory.getLogger(MercuryEnergyMeterTcpBridgeHandler.class);
+    private static final int CONNECT_TIMEOUT = 5000;
+    /**
+     * How often a lost connection to the gateway is retried, in seconds
+     */
+    private static final int RECONNECT_PERIOD = 30;
+
+    private final MercuryEnergyMeterTcpSelector selector;
+    private volatile @Nullable SocketChannel channel;
+    private volatile boolean connected;
+    private volatile boolean disposed;
+    private @Nullable ScheduledFuture<?> connectTask;
+    private @Nullable ScheduledFuture<?> connectTimeoutTask;
+    private String host = "";
+    private int port;
+
+    public MercuryEnergyMeterTcpBridgeHandler(Bridge thing, MercuryEnergyMeterTcpSelector selector) {
+        super(thing);
+        this.selector = selector;
+    }
+
+    @Override
+    public void initialize() {
+        MercuryEnergyMeterConfiguration config = getConfigAs(MercuryEnergyMeterConfiguration.class);
+        if (config.host.isBlank() || config.port < 1 || config.port > 65535) {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR, "Host and port must be set!");
+            return;
+        }
+        host = config.host;
+        port = config.port;
+        portSpeed = config.portSpeed;
+        disposed = false;
+        updateStatus(ThingStatus.UNKNOWN);
+        startBus();
+        connectTask = scheduler.scheduleWithFixedDelay(this::connect, 0, RECONNECT_PERIOD, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts a non-blocking connect, the selector finishes it and calls {@link #onConnected(SocketChannel)}
+     */
+    private synchronized void connect() {
+        if (channel != null || disposed) {
+            return;
+        }
+        SocketChannel socket = null;
+        try {
+            socket = SocketChannel.open();
+            socket.configureBlocking(false);
+            socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            socket.connect(new InetSocketAddress(host, port));
+            SocketChannel pending = socket;
+            channel = pending;
+            connectTimeoutTask = scheduler.schedule(() -> connectTimeout(pending), CONNECT_TIMEOUT,
+                    TimeUnit.MILLISECONDS);
+            selector.register(socket, this);
+        } catch (IOException e) {
+            connectFailed(socket, e.getMessage());
+        } catch (UnresolvedAddressException e) {
+            connectFailed(socket, "unknown host");
+        }
+    }
+
+    private void connectFailed(@Nullable SocketChannel socket, @Nullable String reason) {
+        logger.debug("Cannot connect to {}:{}: {}", host, port, reason);
+        disconnect();
+        close(socket);
+        updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
+                "Cannot connect to " + host + ":" + port);
+    }
+
+    private synchronized void connectTimeout(SocketChannel socket) {
+        if (channel != socket || connected) {
+            return;
+        }
+        logger.debug("Cannot connect to {}:{} within {} ms", host, port, CONNECT_TIMEOUT);
+        disconnect();
+        updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
+                "Cannot connect to " + host + ":" + port);
+    }
+
+    @Override
+    public void onConnected(SocketChannel socket) {
+        // leave the selector thread at once
+        scheduler.execute(() -> connected(socket));
+    }
+
+    private synchronized void connected(SocketChannel socket) {
+        if (disposed || channel != socket || !socket.isConnected()) {
+            return;
+        }
+        connectTimeoutTask = cancel(connectTimeoutTask);
+        resetSessions();
+        connected = true;
+        logger.debug("Connected to {}:{}", host, port);
+        updateStatus(ThingStatus.ONLINE);
+    }
+
+    private synchronized void disconnect() {
+        SocketChannel socket = channel;
+        channel = null;
+        connected = false;
+        connectTimeoutTask = cancel(connectTimeoutTask);
+        resetSessions();
+        if (socket != null) {
+            selector.unregister(socket);
+            close(socket);
+        }
+    }
+
+    private static @Nullable ScheduledFuture<?> cancel(@Nullable ScheduledFuture<?> task) {
+        if (task != null) {
+            task.cancel(false);
+        }
+        return null;
+    }
+
+    private void close(@Nullable SocketChannel socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.debug("Error closing connection: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    protected boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    protected void write(byte[] request, int length) throws IOException {
+        SocketChannel socket = channel;
+        if (socket == null || !connected) {
+            throw new IOException("Not connected");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(request, 0, length);
+        while (buffer.hasRemaining()) {
+            if (socket.write(buffer) == 0) {
+                throw new IOException("Send buffer of the connection is full");
+            }
+        }
+    }
+
+    @Override
+    public void onData(byte[] data, int off, int len) {
+        receiver.onData(data, off, len);
+    }
+
+    @Override
+    public void onClosed(SocketChannel socket, @Nullable IOException e) {
+        if (disposed) {
+            return;
+        }
+        logger.debug("Connection to {}:{} is closed: {}", host, port, e != null ? e.getMessage() : "by gateway");
+        // leave the selector thread at once, it must not wait for the lock of the handler
+        scheduler.execute(() -> closed(socket));
+    }
+
+    /**
+     * Only the current connection is torn down, a late close of a previous one must not end its successor
+     */
+    private synchronized void closed(SocketChannel socket) {
+        if (disposed || channel != socket) {
+            close(socket);
+            return;
+        }
+        boolean wasConnected = connected;
+        disconnect();
+        if (getThing().getStatus() != ThingStatus.REMOVING) {
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
+                    wasConnected ? "Connection closed" : "Cannot connect to " + host + ":" + port);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        logger.debug("Disposing...");
+        disposed = true;
+        final ScheduledFuture<?> task = connectTask;
+        if (task != null && !task.isCancelled()) {
+            task.cancel(true);
+            connectTask = null;
+        }
+        stopBus();
+        disconnect();
+        super.dispose();
+    }
+}
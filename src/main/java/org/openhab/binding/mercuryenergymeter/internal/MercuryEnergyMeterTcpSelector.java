@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link MercuryEnergyMeterTcpSelector} connects and reads the connections of all tcp bridges with non-blocking
+ * NIO on a single thread, which is started with the first registered connection.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterTcpSelector {
+
+    /**
+     * Receives the events of one connection on the selector thread, implementations must not block. Events name the
+     * connection, so a late event of a previous connection can be told apart from the current one.
+     */
+    public interface Listener {
+        /**
+         * Connection is established and data is read from now on
+         */
+        void onConnected(SocketChannel channel);
+
+        void onData(byte[] data, int off, int len);
+
+        void onClosed(SocketChannel channel, @Nullable IOException e);
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(MercuryEnergyMeterTcpSelector.class);
+    private final Queue<Runnable> changes = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(512);
+    private @Nullable Selector selector;
+
+    /**
+     * Registers a non-blocking channel. A pending connection is finished on the selector thread, then the listener
+     * gets {@link Listener#onConnected(SocketChannel)} or {@link Listener#onClosed(SocketChannel, IOException)} if it
+     * fails.
+     */
+    public synchronized void register(SocketChannel channel, Listener listener) throws IOException {
+        Selector current = start();
+        changes.add(() -> {
+            try {
+                if (channel.isConnectionPending()) {
+                    channel.register(current, SelectionKey.OP_CONNECT, listener);
+                } else {
+                    channel.register(current, SelectionKey.OP_READ, listener);
+                    listener.onConnected(channel);
+                }
+            } catch (IOException e) {
+                listener.onClosed(channel, e);
+            }
+        });
+        current.wakeup();
+    }
+
+    public synchronized void unregister(SocketChannel channel) {
+        Selector current = selector;
+        if (current != null) {
+            changes.add(() -> {
+                SelectionKey key = channel.keyFor(current);
+                if (key != null) {
+                    key.cancel();
+                }
+            });
+            current.wakeup();
+        }
+    }
+
+    private Selector start() throws IOException {
+        Selector current = selector;
+        if (current != null && current.isOpen()) {
+            return current;
+        }
+        Selector opened = Selector.open();
+        selector = opened;
+        Thread worker = new Thread(() -> run(opened), "OH-binding-mercuryenergymeter-tcp");
+        worker.setDaemon(true);
+        worker.start();
+        return opened;
+    }
+
+    /**
+     * Closes the selector, registered connections are not closed
+     */
+    public synchronized void close() {
+        Selector current = selector;
+        selector = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                logger.debug("Error closing selector: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void run(Selector current) {
+        try {
+            while (current.isOpen()) {
+                current.select();
+                Runnable change;
+                while ((change = changes.poll()) != null) {
+                    change.run();
+                }
+                Iterator<SelectionKey> keys = current.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isConnectable()) {
+                        finishConnect(key);
+                    } else if (key.isValid() && key.isReadable()) {
+                        read(key);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            logger.debug("Selector stopped: {}", e.getMessage());
+        }
+    }
+
+    private void finishConnect(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Listener listener = (Listener) key.attachment();
+        try {
+            if (channel.finishConnect()) {
+                key.interestOps(SelectionKey.OP_READ);
+                listener.onConnected(channel);
+            }
+        } catch (IOException e) {
+            key.cancel();
+            listener.onClosed(channel, e);
+        }
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Listener listener = (Listener) key.attachment();
+        try {
+            int count;
+            while ((count = channel.read(buffer.clear())) > 0) {
+                listener.onData(buffer.array(), 0, count);
+            }
+            if (count < 0) {
+                key.cancel();
+                listener.onClosed(channel, null);
+            }
+        } catch (IOException e) {
+            key.cancel();
+            listener.onClosed(channel, e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link MercuryEnergyMeterTransaction} is a single request/answer exchange waiting in the bus queue of the
+ * bridge. Transactions are ordered by priority, then by the number of requests the same energy meter already has in
+ * the queue, so one busy meter cannot hold the line, and finally by submission order. Transactions of a burst are
+ * chained by {@link #next}: only the first one waits in the queue, the others follow it on the line.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterTransaction implements Comparable<MercuryEnergyMeterTransaction> {
+
+    public enum Priority {
+        /**
+         * Instantaneous values: power, voltage, current
+         */
+        HIGH,
+        NORMAL,
+        /**
+         * Slowly changing values like energy registers
+         */
+        LOW
+    }
+
+    final int[] data;
+    final int answerLength;
+    final int password;
+    final Priority priority;
+    final int round;
+    final long sequence;
+    /**
+     * Probe of an address during discovery: sent without opening a session and with a short answer timeout
+     */
+    final boolean probe;
+    final CompletableFuture<byte[]> result = new CompletableFuture<>();
+    /**
+     * Next transaction of the burst, executed right after this one
+     */
+    @Nullable
+    MercuryEnergyMeterTransaction next;
+
+    MercuryEnergyMeterTransaction(int[] data, int answerLength, int password, Priority priority, int round,
+            long sequence) {
+        this(data, answerLength, password, priority, round, sequence, false);
+    }
+
+    MercuryEnergyMeterTransaction(int[] data, int answerLength, int password, Priority priority, int round,
+            long sequence, boolean probe) {
+        this.data = data;
+        this.answerLength = answerLength;
+        this.password = password;
+        this.priority = priority;
+        this.round = round;
+        this.sequence = sequence;
+        this.probe = probe;
+    }
+
+    public int getAddress() {
+        return data[0];
+    }
+
+    @Override
+    public int compareTo(MercuryEnergyMeterTransaction other) {
+        int cmp = priority.compareTo(other.priority);
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = Integer.compare(round, other.round);
+        if (cmp != 0) {
+            return cmp;
+        }
+        return Long.compare(sequence, other.sequence);
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterBindingConstants.*;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.config.core.Configuration;
+import org.openhab.core.i18n.TimeZoneProvider;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.ThingHandlerCallback;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
+import org.openhab.core.thing.binding.builder.ThingBuilder;
+
+/**
+ * The {@link MercuryEnergyMeter203tdHandlerTest} checks which decoded values the handler publishes, without a bridge
+ * and with polling switched off.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeter203tdHandlerTest {
+    private static final MercuryEnergyMeterChannel VOLTAGE = MercuryEnergyMeterChannel.VOLTAGE_1;
+
+    private final ThingUID thingUID = new ThingUID(MERCURY_POWERMETER_THING, "meter");
+    private final ThingHandlerCallback callback = mock(ThingHandlerCallback.class);
+    private final List<Double> states = new ArrayList<>();
+    private final Map<String, Object> configuration = new HashMap<>();
+    private final Map<String, Object> channelConfiguration = new HashMap<>();
+    private @NonNullByDefault({}) MercuryEnergyMeter203tdHandler handler;
+    private long now;
+
+    @BeforeEach
+    public void setUp() {
+        configuration.put("pollPeriod", 0);
+        configuration.put("energyPollPeriod", 0);
+        configuration.put("profilePollPeriod", 0);
+        configuration.put("maxSilence", 0);
+        when(callback.isChannelLinked(any())).thenReturn(true);
+        doAnswer(invocation -> {
+            ChannelUID channelUID = invocation.getArgument(0);
+            if (VOLTAGE.id.equals(channelUID.getId())) {
+                states.add(((DecimalType) invocation.getArgument(1)).doubleValue());
+            }
+            return null;
+        }).when(callback).stateUpdated(any(), any());
+    }
+
+    private void initialize() {
+        Channel channel = ChannelBuilder.create(new ChannelUID(thingUID, VOLTAGE.id), "Number")
+                .withConfiguration(new Configuration(channelConfiguration)).build();
+        Thing thing = ThingBuilder.create(MERCURY_POWERMETER_THING, thingUID)
+                .withConfiguration(new Configuration(configuration)).withChannel(channel).build();
+        TimeZoneProvider timeZoneProvider = mock(TimeZoneProvider.class);
+        when(timeZoneProvider.getTimeZone()).thenReturn(ZoneOffset.UTC);
+        handler = new MercuryEnergyMeter203tdHandler(thing, timeZoneProvider);
+        handler.setCallback(callback);
+        handler.initialize();
+    }
+
+    /**
+     * Publishes a voltage in hundredths of a volt one second after the previous one
+     */
+    private void publish(long raw) {
+        now += 1_000_000_000L;
+        handler.publish(VOLTAGE, raw, now);
+    }
+
+    private void assertPublished(double... volts) {
+        List<Double> expected = new ArrayList<>();
+        for (double volt : volts) {
+            expected.add(volt);
+        }
+        assertEquals(expected, states);
+    }
+
+    @Test
+    public void dropsSpikeUntilConfirmed() {
+        configuration.put("plausibilityLimit", 20);
+        initialize();
+        publish(22000);
+        publish(22100);
+        publish(50000);
+        publish(22200);
+        publish(40000);
+        publish(40100);
+        assertPublished(220, 221, 222, 401);
+    }
+
+    @Test
+    public void forgetsValuesOnInitialize() {
+        configuration.put("plausibilityLimit", 20);
+        initialize();
+        publish(22000);
+        // e.g. another meter at the address after the configuration changed
+        handler.dispose();
+        handler.initialize();
+        publish(40000);
+        assertPublished(220, 400);
+    }
+
+    @Test
+    public void publishesEverythingWithoutLimit() {
+        initialize();
+        publish(22000);
+        publish(50000);
+        assertPublished(220, 500);
+    }
+
+    @Test
+    public void holdsChangesWithinDeadband() {
+        channelConfiguration.put("deadband", 1.0);
+        initialize();
+        handler.updateReads();
+        publish(22000);
+        publish(22050);
+        publish(22120);
+        publish(22030);
+        publish(22000);
+        assertPublished(220, 221.2, 220);
+    }
+
+    @Test
+    public void holdsChangesWithinPercentDeadband() {
+        channelConfiguration.put("deadbandPercent", 1.0);
+        initialize();
+        handler.updateReads();
+        publish(22000);
+        publish(22100);
+        publish(22300);
+        assertPublished(220, 223);
+    }
+
+    @Test
+    public void repeatsValueAfterMaxSilence() {
+        configuration.put("maxSilence", 5);
+        channelConfiguration.put("deadband", 1.0);
+        initialize();
+        handler.updateReads();
+        for (int i = 0; i < 7; i++) {
+            publish(22000);
+        }
+        assertPublished(220, 220);
+    }
+
+    @Test
+    public void keepsDeadbandWhenReadsAreUpdated() {
+        channelConfiguration.put("deadband", 1.0);
+        initialize();
+        handler.updateReads();
+        publish(22000);
+        // e.g. another channel was linked or the metadata was refreshed
+        handler.updateReads();
+        publish(22000);
+        assertPublished(220);
+    }
+
+    @Test
+    public void publishesToNewlyLinkedChannel() {
+        channelConfiguration.put("deadband", 1.0);
+        initialize();
+        handler.updateReads();
+        publish(22000);
+        when(callback.isChannelLinked(any())).thenReturn(false);
+        handler.updateReads();
+        when(callback.isChannelLinked(any())).thenReturn(true);
+        handler.updateReads();
+        publish(22000);
+        assertPublished(220, 220);
+    }
+}
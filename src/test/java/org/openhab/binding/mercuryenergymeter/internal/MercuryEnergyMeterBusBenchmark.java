@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterBindingConstants.*;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.config.core.Configuration;
+import org.openhab.core.thing.Bridge;
+import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.ThingHandlerCallback;
+import org.openhab.core.thing.binding.builder.BridgeBuilder;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
+import org.openhab.core.thing.binding.builder.ThingBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link MercuryEnergyMeterBusBenchmark} is a load run of one bus with many simulated energy meters at 9600 baud
+ * line time. Every operation polls voltage, current and power of all energy meters at once, the score is the time of
+ * the slowest poll. Bus metrics printed at the end show CRC errors, timeouts and retries caused by the corruption rate.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MercuryEnergyMeterBusBenchmark {
+    private final Logger logger = LoggerFactory.getLogger(MercuryEnergyMeterBusBenchmark.class);
+    private static final String[] CHANNELS = { CHANNEL_VOLTAGE_1, CHANNEL_VOLTAGE_2, CHANNEL_VOLTAGE_3,
+            CHANNEL_CURRENT_1, CHANNEL_CURRENT_2, CHANNEL_CURRENT_3, CHANNEL_POWER_ACTIVE_TOTAL, CHANNEL_POWER_1,
+            CHANNEL_POWER_2, CHANNEL_POWER_3 };
+    private static final int PORT_SPEED = 9600;
+
+    @Param({ "50" })
+    public int meters = 50;
+    @Param({ "0", "10" })
+    public int latencyMillis;
+    @Param({ "0", "0.01" })
+    public double corruptionRate;
+
+    private final MercuryEnergyMeterSimulator simulator = new MercuryEnergyMeterSimulator(1);
+    private final List<MercuryEnergyMeter203tdHandler> handlers = new ArrayList<>();
+    private @Nullable MercuryEnergyMeterBridgeHandler bridgeHandler;
+
+    @Setup
+    public void setUp() throws Exception {
+        simulator.addMeters(1, meters);
+        simulator.setLatency(latencyMillis, latencyMillis / 2, TimeUnit.MILLISECONDS);
+        simulator.setPortSpeed(PORT_SPEED);
+        simulator.setNoise(0.01);
+        simulator.setCorruptionRate(corruptionRate);
+
+        Bridge bridge = BridgeBuilder.create(RS485_BRIDGE, "bus").withConfiguration(new Configuration(
+                Map.of("serialPort", MercuryEnergyMeterSimulator.PORT_NAME, "portSpeed", PORT_SPEED))).build();
+        MercuryEnergyMeterBridgeHandler bridgeHandler = new MercuryEnergyMeterRS485BridgeHandler(bridge,
+                simulator.getSerialPortManager());
+        bridgeHandler.setCallback(mock(ThingHandlerCallback.class));
+        bridgeHandler.initialize();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!bridgeHandler.isConnected() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        this.bridgeHandler = bridgeHandler;
+
+        ThingHandlerCallback callback = mock(ThingHandlerCallback.class, withSettings().stubOnly());
+        when(callback.isChannelLinked(any())).thenReturn(true);
+        when(callback.getBridge(bridge.getUID())).thenReturn(bridge);
+        for (int address = 1; address <= meters; address++) {
+            ThingUID thingUID = new ThingUID(MERCURY_POWERMETER_THING, bridge.getUID(), "meter" + address);
+            Channel[] channels = new Channel[CHANNELS.length];
+            for (int i = 0; i < CHANNELS.length; i++) {
+                channels[i] = ChannelBuilder.create(new ChannelUID(thingUID, CHANNELS[i]), "Number").build();
+            }
+            Thing thing = ThingBuilder.create(MERCURY_POWERMETER_THING, thingUID).withBridge(bridge.getUID())
+                    .withChannels(channels).build();
+            MercuryEnergyMeter203tdHandler handler = new MercuryEnergyMeter203tdHandler(thing, ZoneId::systemDefault);
+            handler.setCallback(callback);
+            handler.bridgeHandler = bridgeHandler;
+            handler.serno = address;
+            handler.pass = MercuryEnergyMeterSimulatedMeter.USER_PASSWORD;
+            handler.updateReads();
+            handlers.add(handler);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (MercuryEnergyMeter203tdHandler handler : handlers) {
+            handler.dispose();
+        }
+        MercuryEnergyMeterBridgeHandler bridgeHandler = this.bridgeHandler;
+        if (bridgeHandler != null) {
+            MercuryEnergyMeterMetrics metrics = bridgeHandler.getBusMetrics();
+            metrics.report();
+            logger.info("Bus: {}", metrics);
+            bridgeHandler.dispose();
+        }
+        simulator.close();
+        logger.info("Corrupted answers: {}", simulator.getCorrupted());
+    }
+
+    @Benchmark
+    public void pollAllMeters() {
+        CompletableFuture<?>[] polls = new CompletableFuture<?>[handlers.size()];
+        for (int i = 0; i < polls.length; i++) {
+            polls[i] = handlers.get(i).poll();
+        }
+        CompletableFuture.allOf(polls).join();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link MercuryEnergyMeterCRC16ModbusBenchmark} compares the checksum object, the static table lookup and a
+ * bitwise implementation without table on frames of typical length.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MercuryEnergyMeterCRC16ModbusBenchmark {
+
+    /**
+     * Request, auxiliary parameter answer and energy answer
+     */
+    @Param({ "4", "6", "19" })
+    public int length;
+
+    private byte[] frame = new byte[0];
+    private final MercuryEnergyMeterCRC16Modbus crc = new MercuryEnergyMeterCRC16Modbus();
+
+    @Setup
+    public void setUp() {
+        frame = new byte[length];
+        for (int i = 0; i < length; i++) {
+            frame[i] = (byte) (i * 37 + 11);
+        }
+    }
+
+    @Benchmark
+    public long checksumUpdate() {
+        crc.reset();
+        crc.update(frame, 0, frame.length);
+        return crc.getValue();
+    }
+
+    @Benchmark
+    public byte[] checksumNewObject() {
+        MercuryEnergyMeterCRC16Modbus sum = new MercuryEnergyMeterCRC16Modbus();
+        sum.update(frame, 0, frame.length);
+        return sum.getCrcBytes();
+    }
+
+    @Benchmark
+    public int tableLookup() {
+        return MercuryEnergyMeterCRC16Modbus.compute(frame, 0, frame.length);
+    }
+
+    @Benchmark
+    public int bitwise() {
+        int sum = 0xFFFF;
+        for (byte b : frame) {
+            sum ^= b & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                sum = (sum & 1) != 0 ? (sum >>> 1) ^ 0xA001 : sum >>> 1;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterChannel.*;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The {@link MercuryEnergyMeterChannelTest} checks the transformer ratios applied to the values of each channel.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterChannelTest {
+    @Test
+    public void voltageAndCurrentHaveOwnRatio() {
+        assertEquals(100, VOLTAGE_2.ratio(100, 30));
+        assertEquals(30, CURRENT_3.ratio(100, 30));
+    }
+
+    @Test
+    public void powerAndEnergyHaveBothRatios() {
+        assertEquals(3000, POWER_TOTAL.ratio(100, 30));
+        assertEquals(3000, REACTIVE_POWER_2.ratio(100, 30));
+        assertEquals(3000, APPARENT_POWER_3.ratio(100, 30));
+        assertEquals(3000, ENERGY_ACTIVE_TOTAL.ratio(100, 30));
+        assertEquals(3000, ENERGY_REACTIVE_EXPORT_2.ratio(100, 30));
+    }
+
+    @Test
+    public void powerFactorAndFrequencyHaveNoRatio() {
+        assertEquals(1, POWER_FACTOR_1.ratio(100, 30));
+        assertEquals(1, FREQUENCY.ratio(100, 30));
+    }
+
+    @Test
+    public void unknownRatioCountsAsOne() {
+        assertEquals(1, VOLTAGE_1.ratio(0, 0));
+        assertEquals(30, POWER_1.ratio(0, 30));
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The {@link MercuryEnergyMeterCircuitBreakerTest} walks the breaker through its states on a fake clock.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterCircuitBreakerTest {
+    private long now;
+    private final MercuryEnergyMeterCircuitBreaker breaker = new MercuryEnergyMeterCircuitBreaker(() -> now);
+
+    private void advance(long seconds) {
+        now += TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.failure();
+        }
+    }
+
+    @Test
+    public void opensAfterThirdFailure() {
+        breaker.failure();
+        breaker.failure();
+        assertTrue(breaker.isClosed());
+        assertTrue(breaker.allowRequest());
+        breaker.failure();
+        assertFalse(breaker.isClosed());
+        assertFalse(breaker.allowRequest());
+        assertEquals(5, breaker.getRetryIn());
+    }
+
+    @Test
+    public void allowsOneTrialAfterOpenTime() {
+        open();
+        advance(4);
+        assertFalse(breaker.allowRequest());
+        advance(1);
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void closesOnSuccessfulTrial() {
+        open();
+        advance(5);
+        assertTrue(breaker.allowRequest());
+        breaker.success();
+        assertTrue(breaker.isClosed());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void doublesOpenTimeOnFailedTrial() {
+        open();
+        advance(5);
+        assertTrue(breaker.allowRequest());
+        breaker.failure();
+        assertEquals(10, breaker.getRetryIn());
+        advance(9);
+        assertFalse(breaker.allowRequest());
+        advance(1);
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void reopensOnCancelledTrial() {
+        open();
+        advance(5);
+        assertTrue(breaker.allowRequest());
+        breaker.cancelTrial();
+        assertFalse(breaker.isClosed());
+        // the open time is over, so the next request is the trial
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void successResetsFailures() {
+        breaker.failure();
+        breaker.failure();
+        breaker.success();
+        breaker.failure();
+        breaker.failure();
+        assertTrue(breaker.isClosed());
+        breaker.failure();
+        assertFalse(breaker.isClosed());
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.library.types.DecimalType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link MercuryEnergyMeterCodecBenchmark} measures request encoding and answer decoding on the serial hot path.
+ * Run it with {@code -prof gc} to see the allocation rate.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MercuryEnergyMeterCodecBenchmark {
+
+    private final MercuryEnergyMeterCodec codec = new MercuryEnergyMeterCodec();
+    private final int[] request = { 0x01, 0x08, 0x16, 0x11 };
+    private final byte[] voltages = MercuryEnergyMeterSimulatedMeter.auxiliary(0x01, 23012, 22987, 23105);
+    private final byte[] energy = MercuryEnergyMeterSimulatedMeter.energy(0x01, 1234567, 0, 54321, 0xFFFFFFFFL);
+
+    @Benchmark
+    public int encode() {
+        return codec.encode(request);
+    }
+
+    @Benchmark
+    public boolean validateEnergy() {
+        return MercuryEnergyMeterCodec.isValid(energy, energy.length);
+    }
+
+    @Benchmark
+    public DecimalType decodeVoltage() {
+        return MercuryEnergyMeterCodec.toState(MercuryEnergyMeterCodec.decode3(voltages, 4, 0xFF), 2);
+    }
+
+    @Benchmark
+    public DecimalType decodeEnergy() {
+        return MercuryEnergyMeterCodec.toState(MercuryEnergyMeterCodec.decode4(energy, 1), 3);
+    }
+
+    @Benchmark
+    public DecimalType decodeVoltageLegacy() {
+        float value = java.nio.ByteBuffer.wrap(new byte[] { 0x00, voltages[4], voltages[6], voltages[5] }).getInt();
+        return DecimalType.valueOf(String.valueOf(value / 100));
+    }
+}
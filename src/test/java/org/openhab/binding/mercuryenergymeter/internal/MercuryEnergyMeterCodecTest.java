@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The {@link MercuryEnergyMeterCodecTest} checks CRC validation of answers and recognition of status frames.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterCodecTest {
+    private final MercuryEnergyMeterCodec codec = new MercuryEnergyMeterCodec();
+
+    private byte[] frame(int... data) {
+        return Arrays.copyOf(codec.getRequest(), codec.encode(data));
+    }
+
+    @Test
+    public void validFrame() {
+        byte[] frame = frame(0x11, 0x00, 0x44, 0x12, 0x00, 0x22, 0x18, 0x00, 0x23, 0x12);
+        assertTrue(MercuryEnergyMeterCodec.isValid(frame, frame.length));
+    }
+
+    @Test
+    public void corruptedFrame() {
+        byte[] frame = frame(0x11, 0x00, 0x44, 0x12, 0x00, 0x22, 0x18, 0x00, 0x23, 0x12);
+        frame[3] ^= 0x01;
+        assertFalse(MercuryEnergyMeterCodec.isValid(frame, frame.length));
+    }
+
+    @Test
+    public void statusFrameIsNoLongerAnswer() {
+        byte[] status = frame(0x11, 0x05);
+        assertTrue(MercuryEnergyMeterCodec.isValid(status, 4));
+        assertFalse(MercuryEnergyMeterCodec.isValid(status, 19));
+    }
+
+    @Test
+    public void rejectedRequest() {
+        byte[] status = frame(0x11, 0x01);
+        assertTrue(MercuryEnergyMeterBridgeHandler.isRejected(status));
+        assertFalse(MercuryEnergyMeterBridgeHandler.isRejected(Arrays.copyOf(status, 19)));
+        assertFalse(MercuryEnergyMeterBridgeHandler.isRejected(frame(0x11, 0x00)));
+    }
+}
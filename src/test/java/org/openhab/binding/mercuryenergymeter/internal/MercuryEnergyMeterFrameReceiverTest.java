@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The {@link MercuryEnergyMeterFrameReceiverTest} feeds the receiver with echo, noise and answers split the way a
+ * serial port delivers them.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterFrameReceiverTest {
+    private static final int ADDRESS = 0x11;
+    private static final int ENERGY_LENGTH = 19;
+
+    private final MercuryEnergyMeterCodec codec = new MercuryEnergyMeterCodec();
+    private final MercuryEnergyMeterFrameReceiver receiver = new MercuryEnergyMeterFrameReceiver();
+    private final AtomicInteger completed = new AtomicInteger();
+
+    private byte[] frame(int... data) {
+        return Arrays.copyOf(codec.getRequest(), codec.encode(data));
+    }
+
+    private byte[] energyAnswer(int address) {
+        int[] data = new int[ENERGY_LENGTH - 2];
+        data[0] = address;
+        for (int i = 1; i < data.length; i++) {
+            data[i] = i;
+        }
+        return frame(data);
+    }
+
+    private byte[] expect(int length, int... data) {
+        byte[] request = frame(data);
+        receiver.expect(request, request.length, length, completed::incrementAndGet);
+        return request;
+    }
+
+    private byte[] expectEnergy() {
+        return expect(ENERGY_LENGTH, ADDRESS, 0x05, 0x00, 0x00);
+    }
+
+    private void deliver(byte[] data) {
+        receiver.onData(data, 0, data.length);
+    }
+
+    private byte[] take(int expected) {
+        byte[] frame = new byte[256];
+        int length = receiver.take(frame);
+        assertEquals(expected, length);
+        return Arrays.copyOf(frame, length);
+    }
+
+    @Test
+    public void resynchronizesAfterNoise() {
+        expectEnergy();
+        byte[] answer = energyAnswer(ADDRESS);
+        deliver(new byte[] { 0x55, (byte) 0xAA, ADDRESS, 0x33 });
+        deliver(answer);
+        assertEquals(1, completed.get());
+        assertArrayEquals(answer, take(ENERGY_LENGTH));
+        assertTrue(receiver.getDiscarded() > 0);
+    }
+
+    @Test
+    public void completesOnceByteByByte() {
+        byte[] echo = expectEnergy();
+        byte[] answer = energyAnswer(ADDRESS);
+        for (byte b : echo) {
+            deliver(new byte[] { b });
+        }
+        for (byte b : answer) {
+            deliver(new byte[] { b });
+        }
+        assertEquals(1, completed.get());
+        assertArrayEquals(answer, take(ENERGY_LENGTH));
+        assertTrue(receiver.getCompletedAt() != 0);
+    }
+
+    @Test
+    public void dropsEcho() {
+        byte[] echo = expectEnergy();
+        deliver(echo);
+        assertEquals(0, completed.get());
+        deliver(energyAnswer(ADDRESS));
+        assertEquals(1, completed.get());
+        take(ENERGY_LENGTH);
+        assertEquals(0, receiver.getDiscarded());
+    }
+
+    @Test
+    public void dropsLearnedEchoOfAnswerLikeRequest() {
+        deliver(expectEnergy());
+        deliver(energyAnswer(ADDRESS));
+        take(ENERGY_LENGTH);
+
+        // the test command has the length of the status frame it is answered with
+        byte[] echo = expect(MercuryEnergyMeterFrameReceiver.STATUS_FRAME_LENGTH, ADDRESS, 0x00);
+        completed.set(0);
+        deliver(echo);
+        assertEquals(0, completed.get());
+        deliver(frame(ADDRESS, 0x00));
+        assertEquals(1, completed.get());
+        take(MercuryEnergyMeterFrameReceiver.STATUS_FRAME_LENGTH);
+    }
+
+    @Test
+    public void takesStatusFrameInsteadOfAnswer() {
+        expectEnergy();
+        byte[] status = frame(ADDRESS, 0x01);
+        deliver(status);
+        assertEquals(1, completed.get());
+        assertArrayEquals(status, take(MercuryEnergyMeterFrameReceiver.STATUS_FRAME_LENGTH));
+    }
+
+    @Test
+    public void ignoresOtherAddress() {
+        expectEnergy();
+        deliver(energyAnswer(ADDRESS + 1));
+        assertEquals(0, completed.get());
+        byte[] answer = energyAnswer(ADDRESS);
+        deliver(answer);
+        assertEquals(1, completed.get());
+        assertArrayEquals(answer, take(ENERGY_LENGTH));
+    }
+
+    @Test
+    public void takesPartialAnswerOnTimeout() {
+        expectEnergy();
+        byte[] answer = energyAnswer(ADDRESS);
+        receiver.onData(answer, 0, 10);
+        assertEquals(0, completed.get());
+        assertArrayEquals(Arrays.copyOf(answer, 10), take(10));
+        assertEquals(0, receiver.getCompletedAt());
+        // late bytes do not complete the abandoned transaction
+        receiver.onData(answer, 10, answer.length - 10);
+        assertEquals(0, completed.get());
+    }
+}
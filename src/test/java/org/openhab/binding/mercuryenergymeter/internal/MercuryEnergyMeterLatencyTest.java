@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The {@link MercuryEnergyMeterLatencyTest} checks the answer timeout derived from measured answer times.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterLatencyTest {
+    private final MercuryEnergyMeterLatency latency = new MercuryEnergyMeterLatency();
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void defaultDelayWithoutAnswers() {
+        assertEquals(MercuryEnergyMeterLatency.DEFAULT_DELAY, latency.getAnswerDelay());
+        latency.timeout();
+        assertEquals(MercuryEnergyMeterLatency.DEFAULT_DELAY, latency.getAnswerDelay());
+        assertEquals(0, latency.getSamples());
+    }
+
+    @Test
+    public void firstAnswer() {
+        latency.update(millis(20));
+        // average 20 ms plus four deviations of half the first sample
+        assertEquals(millis(60), latency.getAnswerDelay());
+        assertEquals(millis(10), latency.getJitter());
+    }
+
+    @Test
+    public void convergesToSteadyAnswerTime() {
+        for (int i = 0; i < 100; i++) {
+            latency.update(millis(30));
+        }
+        assertEquals(millis(30), latency.getAnswerDelay(), millis(1));
+        assertTrue(latency.getJitter() < millis(1));
+    }
+
+    @Test
+    public void followsSlowerMeter() {
+        for (int i = 0; i < 100; i++) {
+            latency.update(millis(30));
+        }
+        latency.update(millis(90));
+        // one late answer widens the window by more than the change of the average
+        assertTrue(latency.getAnswerDelay() > millis(90));
+    }
+
+    @Test
+    public void timeoutWidensWindow() {
+        latency.update(millis(20));
+        latency.timeout();
+        // deviation doubled plus the minimal delay
+        assertEquals(millis(160), latency.getAnswerDelay());
+    }
+
+    @Test
+    public void delayIsBounded() {
+        for (int i = 0; i < 100; i++) {
+            latency.update(millis(1));
+        }
+        assertEquals(millis(15), latency.getAnswerDelay());
+        latency.update(millis(5000));
+        assertEquals(millis(1000), latency.getAnswerDelay());
+    }
+}
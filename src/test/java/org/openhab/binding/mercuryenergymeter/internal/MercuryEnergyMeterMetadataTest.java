@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterBindingConstants.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterTransaction.Priority;
+import org.openhab.core.thing.Thing;
+
+/**
+ * The {@link MercuryEnergyMeterMetadataTest} checks which values are read by the variant, the round trip through
+ * the thing properties and that only missing values are read again.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterMetadataTest {
+    private static MercuryEnergyMeterMetadata withVariant(String variant) {
+        return new MercuryEnergyMeterMetadata("", variant, 0, 0, 0);
+    }
+
+    @Test
+    public void supportsEverythingWithUnknownVariant() {
+        MercuryEnergyMeterMetadata metadata = withVariant("");
+        for (MercuryEnergyMeterChannel channel : MercuryEnergyMeterChannel.values()) {
+            assertTrue(metadata.supports(channel), channel.id);
+        }
+    }
+
+    @Test
+    public void singlePhase() {
+        MercuryEnergyMeterMetadata metadata = withVariant("B4 04 80 00 00 00");
+        assertTrue(metadata.supports(MercuryEnergyMeterChannel.VOLTAGE_1));
+        assertFalse(metadata.supports(MercuryEnergyMeterChannel.VOLTAGE_2));
+        assertFalse(metadata.supports(MercuryEnergyMeterChannel.VOLTAGE_3));
+        assertTrue(metadata.supports(MercuryEnergyMeterChannel.POWER_TOTAL));
+        // tariffs are not phases
+        assertTrue(metadata.supports(MercuryEnergyMeterChannel.ENERGY_ACTIVE_3));
+    }
+
+    @Test
+    public void unidirectional() {
+        MercuryEnergyMeterMetadata metadata = withVariant("B4 84 00 00 00 00");
+        assertTrue(metadata.supports(MercuryEnergyMeterChannel.ENERGY_ACTIVE_TOTAL));
+        assertTrue(metadata.supports(MercuryEnergyMeterChannel.ENERGY_REACTIVE_TOTAL));
+        assertFalse(metadata.supports(MercuryEnergyMeterChannel.ENERGY_ACTIVE_EXPORT_TOTAL));
+        assertFalse(metadata.supports(MercuryEnergyMeterChannel.ENERGY_REACTIVE_EXPORT_1));
+        assertTrue(metadata.supports(MercuryEnergyMeterChannel.VOLTAGE_3));
+    }
+
+    @Test
+    public void propertiesRoundTrip() {
+        Map<String, String> properties = new HashMap<>();
+        new MercuryEnergyMeterMetadata("12345678", "B4 04 80 00 00 00", 1000, 1, 5).toProperties(properties);
+        MercuryEnergyMeterMetadata metadata = MercuryEnergyMeterMetadata.fromProperties(properties);
+        assertEquals("12345678", metadata.serialNumber);
+        assertEquals("B4 04 80 00 00 00", metadata.variant);
+        assertEquals(1000, metadata.constant);
+        assertEquals(1, metadata.voltageRatio);
+        assertEquals(5, metadata.currentRatio);
+        assertTrue(metadata.isComplete());
+    }
+
+    @Test
+    public void removesUnknownProperties() {
+        Map<String, String> properties = new HashMap<>();
+        new MercuryEnergyMeterMetadata("12345678", "B4 04 80 00 00 00", 1000, 1, 5).toProperties(properties);
+        new MercuryEnergyMeterMetadata("12345678", "", 0, 1, 5).toProperties(properties);
+        assertEquals("12345678", properties.get(Thing.PROPERTY_SERIAL_NUMBER));
+        assertFalse(properties.containsKey(PROPERTY_VARIANT));
+        assertFalse(properties.containsKey(PROPERTY_METER_CONSTANT));
+        assertFalse(MercuryEnergyMeterMetadata.fromProperties(properties).isComplete());
+    }
+
+    @Test
+    public void readsOnlyMissingValues() {
+        MercuryEnergyMeterBridgeHandler bridge = mock(MercuryEnergyMeterBridgeHandler.class);
+        // status frame instead of the transformer ratios
+        when(bridge.submit(any(), anyInt(), anyInt(), any()))
+                .thenReturn(CompletableFuture.completedFuture(new byte[] { 17, 0x01, 0x00, 0x00 }));
+        MercuryEnergyMeterMetadata known = new MercuryEnergyMeterMetadata("12345678", "B4 04 80 00 00 00", 1000, 0,
+                0);
+        MercuryEnergyMeterMetadata read = MercuryEnergyMeterMetadata.read(bridge, 17, 111111, known).join();
+        verify(bridge).submit(aryEq(new int[] { 17, 0x08, 0x02 }), anyInt(), anyInt(), eq(Priority.LOW));
+        verifyNoMoreInteractions(bridge);
+        assertEquals("12345678", read.serialNumber);
+        assertEquals("B4 04 80 00 00 00", read.variant);
+        assertEquals(1000, read.constant);
+        assertEquals(0, read.voltageRatio);
+        assertFalse(read.isComplete());
+    }
+
+    @Test
+    public void readsRatios() {
+        MercuryEnergyMeterBridgeHandler bridge = mock(MercuryEnergyMeterBridgeHandler.class);
+        byte[] answer = new byte[7];
+        answer[0] = 17;
+        answer[2] = 100;
+        answer[3] = 0x01;
+        answer[4] = 0x2C;
+        int crc = MercuryEnergyMeterCRC16Modbus.compute(answer, 0, 5);
+        answer[5] = (byte) crc;
+        answer[6] = (byte) (crc >>> 8);
+        when(bridge.submit(any(), anyInt(), anyInt(), any())).thenReturn(CompletableFuture.completedFuture(answer));
+        MercuryEnergyMeterMetadata known = new MercuryEnergyMeterMetadata("12345678", "B4 04 80 00 00 00", 1000, 0,
+                0);
+        MercuryEnergyMeterMetadata read = MercuryEnergyMeterMetadata.read(bridge, 17, 111111, known).join();
+        assertEquals(100, read.voltageRatio);
+        assertEquals(300, read.currentRatio);
+        assertTrue(read.isComplete());
+    }
+}
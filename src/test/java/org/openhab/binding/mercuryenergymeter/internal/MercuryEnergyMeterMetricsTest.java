@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The {@link MercuryEnergyMeterMetricsTest} checks the counters and the answer time histogram of a measurement
+ * window.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterMetricsTest {
+    private final MercuryEnergyMeterMetrics metrics = new MercuryEnergyMeterMetrics();
+
+    private void answers(int count, long millis) {
+        for (int i = 0; i < count; i++) {
+            metrics.answer(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+
+    @Test
+    public void countsSinceStart() {
+        metrics.transaction(0);
+        metrics.transaction(0);
+        metrics.crcError();
+        metrics.timeout();
+        metrics.retry();
+        metrics.report();
+        metrics.transaction(0);
+        metrics.report();
+        assertEquals(3, metrics.getTransactions());
+        assertEquals(1, metrics.getCrcErrors());
+        assertEquals(1, metrics.getTimeouts());
+        assertEquals(1, metrics.getRetries());
+    }
+
+    @Test
+    public void answerTimePercentile() {
+        answers(90, 5);
+        answers(8, 15);
+        answers(2, 150);
+        metrics.report();
+        // 98 of 100 answers came within 20 ms
+        assertEquals(20, metrics.getAnswerTime95());
+        assertEquals("<=10 ms: 90, <=20 ms: 8, <=50 ms: 0, <=100 ms: 0, <=200 ms: 2, <=500 ms: 0, <=1000 ms: 0, "
+                + ">1000 ms: 0", metrics.getAnswerTimes());
+    }
+
+    @Test
+    public void answerTimeOfWindowOnly() {
+        answers(100, 150);
+        metrics.report();
+        answers(100, 5);
+        metrics.report();
+        assertEquals(10, metrics.getAnswerTime95());
+        metrics.report();
+        assertEquals(0, metrics.getAnswerTime95());
+    }
+
+    @Test
+    public void answerTimeAboveLastBucket() {
+        answers(10, 1500);
+        metrics.report();
+        assertEquals(Long.MAX_VALUE, metrics.getAnswerTime95());
+    }
+
+    @Test
+    public void longestPollCycleOfWindow() {
+        metrics.pollCycle(TimeUnit.MILLISECONDS.toNanos(40));
+        metrics.pollCycle(TimeUnit.MILLISECONDS.toNanos(120));
+        metrics.pollCycle(TimeUnit.MILLISECONDS.toNanos(80));
+        metrics.report();
+        assertEquals(120, metrics.getMaxPollCycle());
+        metrics.report();
+        assertEquals(0, metrics.getMaxPollCycle());
+    }
+
+    @Test
+    public void utilizationIsShareOfWindow() throws InterruptedException {
+        metrics.report();
+        Thread.sleep(20);
+        // busy for longer than the window can only mean the whole window
+        metrics.transaction(TimeUnit.SECONDS.toNanos(10));
+        metrics.report();
+        assertEquals(100.0, metrics.getUtilization(), 0.001);
+        metrics.report();
+        assertEquals(0.0, metrics.getUtilization(), 0.001);
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterBindingConstants.*;
+
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.config.core.Configuration;
+import org.openhab.core.thing.Bridge;
+import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.ThingHandlerCallback;
+import org.openhab.core.thing.binding.builder.BridgeBuilder;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
+import org.openhab.core.thing.binding.builder.ThingBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link MercuryEnergyMeterPollBenchmark} runs full poll cycles of the 203td handler through the bridge queue,
+ * session cache, codec and frame receiver against one {@link MercuryEnergyMeterSimulator} energy meter, either as
+ * serial port or behind the local {@link MercuryEnergyMeterTcpStandIn} gateway. Line time is zero, so the score is the
+ * binding overhead per cycle. Divide the transactions counter by the cycles to get transactions per cycle.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MercuryEnergyMeterPollBenchmark {
+    private final Logger logger = LoggerFactory.getLogger(MercuryEnergyMeterPollBenchmark.class);
+    private static final String[] CHANNELS = { CHANNEL_VOLTAGE_1, CHANNEL_VOLTAGE_2, CHANNEL_VOLTAGE_3,
+            CHANNEL_CURRENT_1, CHANNEL_CURRENT_2, CHANNEL_CURRENT_3, CHANNEL_POWER_ACTIVE_TOTAL, CHANNEL_POWER_1,
+            CHANNEL_POWER_2, CHANNEL_POWER_3, CHANNEL_ENERGY_ACTIVE_TOTAL, CHANNEL_ENERGY_1, CHANNEL_ENERGY_2,
+            CHANNEL_ENERGY_3 };
+    private static final int ADDRESS = 17;
+
+    @Param({ "serial", "tcp" })
+    public String transport = "serial";
+
+    private final MercuryEnergyMeterSimulator simulator = new MercuryEnergyMeterSimulator(1);
+    private final MercuryEnergyMeterTcpSelector selector = new MercuryEnergyMeterTcpSelector();
+    private @Nullable MercuryEnergyMeterTcpStandIn tcpStandIn;
+    private @Nullable MercuryEnergyMeterBridgeHandler bridgeHandler;
+    private @Nullable MercuryEnergyMeter203tdHandler handler;
+
+    @Setup
+    public void setUp() throws Exception {
+        simulator.addMeter(ADDRESS);
+        Bridge bridge;
+        MercuryEnergyMeterBridgeHandler bridgeHandler;
+        if ("tcp".equals(transport)) {
+            MercuryEnergyMeterTcpStandIn tcpStandIn = new MercuryEnergyMeterTcpStandIn(simulator);
+            bridge = BridgeBuilder.create(TCP_BRIDGE, "bus").withConfiguration(new Configuration(
+                    Map.of("host", tcpStandIn.getHost(), "port", tcpStandIn.getPort(), "portSpeed", 9600))).build();
+            bridgeHandler = new MercuryEnergyMeterTcpBridgeHandler(bridge, selector);
+            this.tcpStandIn = tcpStandIn;
+        } else {
+            bridge = BridgeBuilder.create(RS485_BRIDGE, "bus").withConfiguration(new Configuration(
+                    Map.of("serialPort", MercuryEnergyMeterSimulator.PORT_NAME, "portSpeed", 9600))).build();
+            bridgeHandler = new MercuryEnergyMeterRS485BridgeHandler(bridge, simulator.getSerialPortManager());
+        }
+        bridgeHandler.setCallback(mock(ThingHandlerCallback.class));
+        bridgeHandler.initialize();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!bridgeHandler.isConnected() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        ThingUID thingUID = new ThingUID(MERCURY_POWERMETER_THING, bridge.getUID(), "meter");
+        Channel[] channels = new Channel[CHANNELS.length];
+        for (int i = 0; i < CHANNELS.length; i++) {
+            channels[i] = ChannelBuilder.create(new ChannelUID(thingUID, CHANNELS[i]), "Number").build();
+        }
+        Thing thing = ThingBuilder.create(MERCURY_POWERMETER_THING, thingUID).withBridge(bridge.getUID())
+                .withChannels(channels).build();
+        ThingHandlerCallback callback = mock(ThingHandlerCallback.class, withSettings().stubOnly());
+        when(callback.isChannelLinked(any())).thenReturn(true);
+        when(callback.getBridge(bridge.getUID())).thenReturn(bridge);
+        MercuryEnergyMeter203tdHandler handler = new MercuryEnergyMeter203tdHandler(thing, ZoneId::systemDefault);
+        handler.setCallback(callback);
+        handler.bridgeHandler = bridgeHandler;
+        handler.serno = ADDRESS;
+        handler.pass = 111111;
+        handler.updateReads();
+        this.bridgeHandler = bridgeHandler;
+        this.handler = handler;
+    }
+
+    @TearDown
+    public void tearDown(BenchmarkParams params) throws IOException {
+        MercuryEnergyMeter203tdHandler handler = this.handler;
+        MercuryEnergyMeterBridgeHandler bridgeHandler = this.bridgeHandler;
+        MercuryEnergyMeterTcpStandIn tcpStandIn = this.tcpStandIn;
+        if (handler != null) {
+            handler.dispose();
+        }
+        if (bridgeHandler != null) {
+            bridgeHandler.dispose();
+        }
+        if (tcpStandIn != null) {
+            tcpStandIn.close();
+        }
+        selector.close();
+        simulator.close();
+        logger.info("Transactions: {}", simulator.getTransactions());
+    }
+
+    @Benchmark
+    public void instantaneousCycle() {
+        MercuryEnergyMeter203tdHandler handler = this.handler;
+        if (handler != null) {
+            handler.poll().join();
+        }
+    }
+
+    @Benchmark
+    public void energyCycle() {
+        MercuryEnergyMeter203tdHandler handler = this.handler;
+        if (handler != null) {
+            handler.pollEnergy().join();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterProfileReader.Record;
+
+/**
+ * The {@link MercuryEnergyMeterProfileReaderTest} reads the power profile from a simulated memory of the energy meter.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterProfileReaderTest {
+    private static final int ADDRESS = 0x11;
+    private static final int CONSTANT = 1000;
+    private static final int PERIOD = 30;
+
+    private final MercuryEnergyMeterBridgeHandler bridge = mock(MercuryEnergyMeterBridgeHandler.class);
+    private final byte[] memory = new byte[MercuryEnergyMeterProfileReader.MEMORY_SIZE];
+    private final List<Record> records = new ArrayList<>();
+    private int last;
+
+    @BeforeEach
+    public void setUp() {
+        Arrays.fill(memory, (byte) 0xFF);
+        when(bridge.submit(any(), anyInt(), anyInt(), any())).thenAnswer(invocation -> {
+            int[] request = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(answer(request));
+        });
+    }
+
+    /**
+     * Answers are longer than the requests the codec encodes
+     */
+    private static byte[] frame(int... data) {
+        byte[] frame = new byte[data.length + 2];
+        for (int i = 0; i < data.length; i++) {
+            frame[i] = (byte) data[i];
+        }
+        int sum = MercuryEnergyMeterCRC16Modbus.compute(frame, 0, data.length);
+        frame[data.length] = (byte) (sum & 0xFF);
+        frame[data.length + 1] = (byte) ((sum >>> 8) & 0xFF);
+        return frame;
+    }
+
+    private byte[] answer(int[] request) {
+        if (request[1] == 0x08 && request[2] == 0x13) {
+            int[] header = new int[6];
+            for (int i = 0; i < header.length; i++) {
+                header[i] = memory[last + i] & 0xFF;
+            }
+            return frame(ADDRESS, last >> 8, last & 0xFF, header[0], header[1], header[2], header[3], header[4],
+                    header[5], memory[last + 6] & 0xFF);
+        }
+        if (request[1] == 0x06) {
+            int start = (request[3] << 8) | request[4];
+            int[] data = new int[request[5] + 1];
+            data[0] = ADDRESS;
+            for (int i = 1; i < data.length; i++) {
+                data[i] = memory[start + i - 1] & 0xFF;
+            }
+            return frame(data);
+        }
+        return new byte[0];
+    }
+
+    /**
+     * Writes a record of the given hour, active import in pulses, the other values are not recorded
+     */
+    private void write(int address, int hour, int pulses) {
+        int[] record = { 0x00, bcd(hour), 0x30, 0x15, 0x06, 0x21, PERIOD, pulses & 0xFF, pulses >> 8, 0xFF, 0xFF,
+                0xFF, 0xFF, 0xFF, 0xFF, 0xFF };
+        for (int i = 0; i < record.length; i++) {
+            memory[address + i] = (byte) record[i];
+        }
+        last = address;
+    }
+
+    private static int bcd(int value) {
+        return ((value / 10) << 4) | (value % 10);
+    }
+
+    private MercuryEnergyMeterProfileReader reader(int cursor) {
+        return new MercuryEnergyMeterProfileReader(bridge, ADDRESS, 0, ZoneOffset.UTC, cursor, CONSTANT,
+                records::add);
+    }
+
+    @Test
+    public void readsNewestRecordWithoutCursor() {
+        write(0x0100, 10, 100);
+        write(0x0110, 11, 200);
+        MercuryEnergyMeterProfileReader reader = reader(MercuryEnergyMeterProfileReader.NO_CURSOR);
+        assertEquals(1, reader.read().join().intValue());
+        assertEquals(0x0110, reader.getCursor());
+        assertEquals(1, records.size());
+        Record record = records.get(0);
+        assertEquals(ZonedDateTime.of(2021, 6, 15, 11, 30, 0, 0, ZoneOffset.UTC), record.time);
+        assertEquals(PERIOD, record.period);
+        // 200 pulses at twice 1000 pulses per kWh in 30 minutes
+        assertEquals(200.0, record.activeImport, 1e-9);
+        assertTrue(Double.isNaN(record.activeExport));
+        assertTrue(Double.isNaN(record.reactiveImport));
+        assertTrue(Double.isNaN(record.reactiveExport));
+    }
+
+    @Test
+    public void readsAcrossEndOfMemory() {
+        write(0xFFE0, 8, 100);
+        write(0xFFF0, 9, 100);
+        write(0x0000, 10, 100);
+        write(0x0010, 11, 100);
+        write(0x0020, 12, 100);
+        MercuryEnergyMeterProfileReader reader = reader(0xFFE0);
+        assertEquals(4, reader.read().join().intValue());
+        assertEquals(0x0020, reader.getCursor());
+        assertEquals(4, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(9 + i, records.get(i).time.getHour());
+        }
+    }
+
+    @Test
+    public void readsNothingNew() {
+        write(0x0100, 10, 100);
+        MercuryEnergyMeterProfileReader reader = reader(0x0100);
+        assertEquals(0, reader.read().join().intValue());
+        assertEquals(0x0100, reader.getCursor());
+        assertTrue(records.isEmpty());
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterChannel.*;
+
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterTransaction.Priority;
+
+/**
+ * The {@link MercuryEnergyMeterReadTest} checks the requests planned for linked channels.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterReadTest {
+    private static final int ADDRESS = 17;
+
+    @Test
+    public void singlePhaseHasOwnRequest() {
+        List<MercuryEnergyMeterRead> reads = MercuryEnergyMeterRead.plan(ADDRESS, List.of(VOLTAGE_2, FREQUENCY));
+        assertEquals(2, reads.size());
+        MercuryEnergyMeterRead voltage = reads.get(0);
+        assertArrayEquals(new int[] { ADDRESS, 0x08, 0x11, 0x12 }, voltage.request);
+        assertEquals(6, voltage.answerLength);
+        assertEquals(Priority.HIGH, voltage.priority);
+        assertArrayEquals(new Object[] { VOLTAGE_2 }, voltage.channels);
+        assertArrayEquals(new int[] { 1 }, voltage.offsets);
+        assertTrue(voltage.isOwnRequest(VOLTAGE_2));
+        assertArrayEquals(new int[] { ADDRESS, 0x08, 0x11, 0x40 }, reads.get(1).request);
+    }
+
+    @Test
+    public void phasesShareMultiPhaseRequest() {
+        List<MercuryEnergyMeterRead> reads = MercuryEnergyMeterRead.plan(ADDRESS,
+                List.of(VOLTAGE_1, VOLTAGE_2, VOLTAGE_3, CURRENT_1));
+        assertEquals(2, reads.size());
+        MercuryEnergyMeterRead voltages = reads.get(0);
+        assertArrayEquals(new int[] { ADDRESS, 0x08, 0x16, 0x11 }, voltages.request);
+        assertEquals(12, voltages.answerLength);
+        assertArrayEquals(new Object[] { VOLTAGE_1, VOLTAGE_2, VOLTAGE_3 }, voltages.channels);
+        assertArrayEquals(new int[] { 1, 4, 7 }, voltages.offsets);
+        assertFalse(voltages.isOwnRequest(VOLTAGE_1));
+        // a single linked current keeps its own request
+        assertArrayEquals(new int[] { ADDRESS, 0x08, 0x11, 0x21 }, reads.get(1).request);
+    }
+
+    @Test
+    public void energyRegistersOfTariffShareRequest() {
+        List<MercuryEnergyMeterRead> reads = MercuryEnergyMeterRead.plan(ADDRESS,
+                List.of(ENERGY_ACTIVE_TOTAL, ENERGY_REACTIVE_EXPORT_TOTAL, ENERGY_ACTIVE_1));
+        assertEquals(2, reads.size());
+        MercuryEnergyMeterRead total = reads.get(0);
+        assertArrayEquals(new int[] { ADDRESS, 0x05, 0x00, 0x00 }, total.request);
+        assertEquals(19, total.answerLength);
+        assertEquals(Priority.LOW, total.priority);
+        assertArrayEquals(new int[] { 1, 13 }, total.offsets);
+        assertArrayEquals(new int[] { ADDRESS, 0x05, 0x00, 0x01 }, reads.get(1).request);
+    }
+
+    @Test
+    public void nothingLinked() {
+        assertTrue(MercuryEnergyMeterRead.plan(ADDRESS, List.of()).isEmpty());
+        assertTrue(MercuryEnergyMeterRead.planFixed(ADDRESS, List.of()).isEmpty());
+    }
+
+    @Test
+    public void fixedValuesAreReadForAllPhases() {
+        List<MercuryEnergyMeterRead> reads = MercuryEnergyMeterRead.planFixed(ADDRESS,
+                List.of(VOLTAGE_2, CURRENT_1, CURRENT_3));
+        assertEquals(2, reads.size());
+        // a single phase is read with the group BWRI, the fixed data holds all phases
+        MercuryEnergyMeterRead voltages = reads.get(0);
+        assertArrayEquals(new int[] { ADDRESS, 0x08, 0x14, 0x11 }, voltages.request);
+        assertEquals(12, voltages.answerLength);
+        assertEquals(Priority.HIGH, voltages.priority);
+        assertArrayEquals(new Object[] { VOLTAGE_2 }, voltages.channels);
+        assertArrayEquals(new int[] { 4 }, voltages.offsets);
+        MercuryEnergyMeterRead currents = reads.get(1);
+        assertArrayEquals(new int[] { ADDRESS, 0x08, 0x14, 0x21 }, currents.request);
+        assertArrayEquals(new Object[] { CURRENT_1, CURRENT_3 }, currents.channels);
+        assertArrayEquals(new int[] { 1, 7 }, currents.offsets);
+    }
+
+    @Test
+    public void fixedValuesWithoutGroupUseOwnBwri() {
+        List<MercuryEnergyMeterRead> reads = MercuryEnergyMeterRead.planFixed(ADDRESS, List.of(FREQUENCY));
+        assertEquals(1, reads.size());
+        MercuryEnergyMeterRead frequency = reads.get(0);
+        assertArrayEquals(new int[] { ADDRESS, 0x08, 0x14, 0x40 }, frequency.request);
+        assertEquals(FREQUENCY.answerLength, frequency.answerLength);
+        assertArrayEquals(new int[] { FREQUENCY.offset }, frequency.offsets);
+        assertEquals(Priority.HIGH, frequency.priority);
+    }
+
+    @Test
+    public void fixedValuesSkipEnergy() {
+        List<MercuryEnergyMeterRead> reads = MercuryEnergyMeterRead.planFixed(ADDRESS,
+                List.of(ENERGY_ACTIVE_TOTAL, ENERGY_ACTIVE_1, FREQUENCY));
+        assertEquals(1, reads.size());
+        assertArrayEquals(new Object[] { FREQUENCY }, reads.get(0).channels);
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterSampleBuffer.Aggregate;
+
+/**
+ * The {@link MercuryEnergyMeterSampleBufferTest} checks aggregation over the ring buffer and the time window.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterSampleBufferTest {
+    private final MercuryEnergyMeterSampleBuffer buffer = new MercuryEnergyMeterSampleBuffer(4);
+
+    @Test
+    public void aggregatesNewestSamplesAfterWraparound() {
+        for (int i = 1; i <= 6; i++) {
+            buffer.add(i, i * 10);
+        }
+        assertEquals(4, buffer.size());
+        Aggregate aggregate = buffer.aggregate(0);
+        assertNotNull(aggregate);
+        assertEquals(4, aggregate.count);
+        assertEquals(30, aggregate.min);
+        assertEquals(60, aggregate.max);
+        assertEquals(45.0, aggregate.mean, 1e-9);
+        assertEquals(60, aggregate.last);
+    }
+
+    @Test
+    public void skipsSamplesBeforeWindow() {
+        for (int i = 1; i <= 6; i++) {
+            buffer.add(i, i * 10);
+        }
+        Aggregate aggregate = buffer.aggregate(5);
+        assertNotNull(aggregate);
+        assertEquals(2, aggregate.count);
+        assertEquals(50, aggregate.min);
+        assertNull(buffer.aggregate(7));
+    }
+
+    @Test
+    public void emptyBuffer() {
+        assertNull(buffer.aggregate(0));
+        assertNull(buffer.last(0));
+    }
+
+    @Test
+    public void lastSample() {
+        buffer.add(1, 10);
+        buffer.add(2, 20);
+        assertEquals(Long.valueOf(20), buffer.last(2));
+        assertNull(buffer.last(3));
+    }
+
+    @Test
+    public void keepsAtLeastOneSample() {
+        MercuryEnergyMeterSampleBuffer empty = new MercuryEnergyMeterSampleBuffer(0);
+        assertEquals(1, empty.capacity());
+        empty.add(1, 10);
+        empty.add(2, 20);
+        assertEquals(Long.valueOf(20), empty.last(0));
+    }
+}
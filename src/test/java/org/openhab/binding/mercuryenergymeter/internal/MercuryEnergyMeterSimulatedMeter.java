@@ -0,0 +1,449 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link MercuryEnergyMeterSimulatedMeter} answers requests like one Mercury 230 family energy meter: test (0x00),
+ * open channel (0x01), data fixation (0x03 0x08), energy array (0x05), memory (0x06) and auxiliary parameters
+ * (0x08 0x11, 0x08 0x16: powers P, Q, S, voltage, current, power factor and frequency, 0x08 0x14: the same values
+ * latched by the last fixation, serial number 0x08 0x00, transformer ratios 0x08 0x02, network address 0x08 0x05,
+ * variant 0x08 0x12, last power profile record 0x08 0x13).
+ * Data requests need an open channel, which closes after 240 seconds without requests. Active energy import grows with
+ * the simulated power, export registers of reactive energy are not supported. The power profile in memory 3 holds 30
+ * minute records of the last days and wraps around the end of the memory.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterSimulatedMeter {
+    public static final int STATUS_OK = 0x00;
+    public static final int STATUS_INVALID = 0x01;
+    public static final int STATUS_CHANNEL_CLOSED = 0x05;
+    public static final int USER_PASSWORD = 111111;
+    public static final int ADMIN_PASSWORD = 222222;
+    private static final long SESSION_TIMEOUT = TimeUnit.SECONDS.toNanos(240);
+    private static final long NOT_SUPPORTED = 0xFFFFFFFFL;
+    private static final int TARIFFS = 4;
+    private static final int PROFILE_PERIOD = 30;
+    private static final int PROFILE_DAYS = 10;
+    private static final int PROFILE_RECORD_SIZE = 16;
+    /**
+     * Meter constant 1000 pulses per kWh, variant code 4
+     */
+    private static final int CONSTANT = 1000;
+
+    private final int address;
+    /**
+     * Serial number, two decimal digits per byte
+     */
+    private final int[] serialNumber;
+    private final Random random;
+    private double noise;
+    private long sessionAt;
+    private boolean singlePhase;
+    private int tariffs = TARIFFS;
+
+    private final double[] voltage = { 230.12, 229.87, 231.05 };
+    private final double[] current = { 5.231, 3.104, 0.482 };
+    private double powerFactor = 0.95;
+    /**
+     * Active energy import per tariff in Wh, the simulated load runs in tariff 1
+     */
+    private final double[] activeImport = new double[TARIFFS];
+    private final long[] reactiveImport = new long[TARIFFS];
+    private long lastUpdate = System.nanoTime();
+    private final byte[] profile = new byte[0x10000];
+    private int lastProfileRecord;
+    private LocalDateTime lastProfileTime;
+    /**
+     * Values latched by the last data fixation (0x03 0x08)
+     */
+    private Map<Integer, int[]> fixed = Map.of();
+
+    public MercuryEnergyMeterSimulatedMeter(int address, long seed) {
+        this.address = address;
+        this.random = new Random(seed);
+        this.serialNumber = new int[] { 41, 23, address / 100, address % 100 };
+        for (int tariff = 0; tariff < TARIFFS; tariff++) {
+            activeImport[tariff] = 1234567 + address * 1000 + tariff;
+            reactiveImport[tariff] = 54321 + tariff;
+        }
+        Arrays.fill(profile, (byte) 0xFF);
+        // first record close to the end of the memory, so the profile wraps around
+        int records = PROFILE_DAYS * 24 * 60 / PROFILE_PERIOD;
+        lastProfileRecord = profile.length - 128 * PROFILE_RECORD_SIZE - PROFILE_RECORD_SIZE;
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+        lastProfileTime = now.minusMinutes((long) records * PROFILE_PERIOD);
+        recordProfile(records);
+    }
+
+    /**
+     * Adds profile records for the following integration periods, like a meter which was not read for this time
+     */
+    public synchronized void recordProfile(int records) {
+        double active = 0;
+        double reactive = 0;
+        for (int phase = 0; phase < 3; phase++) {
+            double apparent = voltage[phase] * current[phase];
+            active += apparent * powerFactor;
+            reactive += apparent * Math.sin(Math.acos(powerFactor));
+        }
+        for (int i = 0; i < records; i++) {
+            lastProfileRecord = (lastProfileRecord + PROFILE_RECORD_SIZE) % profile.length;
+            lastProfileTime = lastProfileTime.plusMinutes(PROFILE_PERIOD);
+            int off = lastProfileRecord;
+            profile[off] = 0;
+            profile[off + 1] = bcd(lastProfileTime.getHour());
+            profile[off + 2] = bcd(lastProfileTime.getMinute());
+            profile[off + 3] = bcd(lastProfileTime.getDayOfMonth());
+            profile[off + 4] = bcd(lastProfileTime.getMonthValue());
+            profile[off + 5] = bcd(lastProfileTime.getYear() % 100);
+            profile[off + 6] = PROFILE_PERIOD;
+            pulses(off + 7, noisy(active));
+            pulses(off + 9, 0);
+            pulses(off + 11, noisy(reactive));
+            profile[off + 13] = (byte) 0xFF;
+            profile[off + 14] = (byte) 0xFF;
+        }
+    }
+
+    public synchronized LocalDateTime getLastProfileTime() {
+        return lastProfileTime;
+    }
+
+    /**
+     * Memory holds average power as pulses at twice the meter constant, low byte first
+     */
+    private void pulses(int off, double power) {
+        long pulses = Math.round(power * 2 * CONSTANT * PROFILE_PERIOD / 60000);
+        profile[off] = (byte) pulses;
+        profile[off + 1] = (byte) (pulses >> 8);
+    }
+
+    private static byte bcd(int value) {
+        return (byte) ((value / 10) << 4 | value % 10);
+    }
+
+    public int getAddress() {
+        return address;
+    }
+
+    public String getSerialNumber() {
+        return String.format("%02d%02d%02d%02d", serialNumber[0], serialNumber[1], serialNumber[2], serialNumber[3]);
+    }
+
+    /**
+     * Relative standard deviation of the instantaneous values, 0.01 is 1 %
+     */
+    public void setNoise(double noise) {
+        this.noise = noise;
+    }
+
+    /**
+     * Single phase variant rejects requests of phases 2 and 3
+     */
+    public void setSinglePhase(boolean singlePhase) {
+        this.singlePhase = singlePhase;
+    }
+
+    /**
+     * Number of tariffs, energy of higher tariffs is rejected
+     */
+    public void setTariffs(int tariffs) {
+        this.tariffs = Math.min(tariffs, TARIFFS);
+    }
+
+    public void setReadings(double[] voltage, double[] current, double powerFactor) {
+        System.arraycopy(voltage, 0, this.voltage, 0, this.voltage.length);
+        System.arraycopy(current, 0, this.current, 0, this.current.length);
+        this.powerFactor = powerFactor;
+    }
+
+    /**
+     * Answer to a request with valid CRC, addressed to this energy meter or broadcast
+     */
+    public synchronized byte[] answer(byte[] request, int length) {
+        long now = System.nanoTime();
+        accumulate(now);
+        int command = request[1] & 0xFF;
+        if (command == 0x00) {
+            return status(address, STATUS_OK);
+        }
+        if (command == 0x01) {
+            return openChannel(request, length, now);
+        }
+        if (sessionAt == 0 || now - sessionAt > SESSION_TIMEOUT) {
+            sessionAt = 0;
+            return status(address, STATUS_CHANNEL_CLOSED);
+        }
+        sessionAt = now;
+        if (command == 0x05 && length == 6) {
+            return energyArray(request[2] & 0xFF, request[3] & 0xFF);
+        }
+        if (command == 0x06 && length == 8) {
+            return memory(request[2] & 0xFF, (request[3] & 0xFF) << 8 | (request[4] & 0xFF), request[5] & 0xFF);
+        }
+        if (command == 0x03 && length == 5 && request[2] == 0x08) {
+            fixData();
+            return status(address, STATUS_OK);
+        }
+        if (command == 0x08 && length >= 5) {
+            return auxiliaryParameter(request[2] & 0xFF, length >= 6 ? request[3] & 0xFF : -1);
+        }
+        return status(address, STATUS_INVALID);
+    }
+
+    /**
+     * Latches all instantaneous values with the group BWRI of 0x08 0x16 as key
+     */
+    private void fixData() {
+        Map<Integer, int[]> data = new HashMap<>();
+        for (int kind = 0; kind < 3; kind++) {
+            data.put(kind << 2, new int[] { power(kind, 0), power(kind, 1), power(kind, 2), power(kind, 3) });
+        }
+        data.put(0x11, new int[] { voltage(0), voltage(1), voltage(2) });
+        data.put(0x21, new int[] { current(0), current(1), current(2) });
+        data.put(0x30, new int[] { powerFactor(0), powerFactor(1), powerFactor(2), powerFactor(3) });
+        data.put(0x40, new int[] { frequency() });
+        fixed = data;
+    }
+
+    private byte[] openChannel(byte[] request, int length, long now) {
+        if (length != 11) {
+            return status(address, STATUS_INVALID);
+        }
+        int password = 0;
+        for (int i = 3; i < 9; i++) {
+            password = password * 10 + request[i];
+        }
+        int level = request[2];
+        if ((level == 1 && password == USER_PASSWORD) || (level == 2 && password == ADMIN_PASSWORD)) {
+            sessionAt = now;
+            return status(address, STATUS_OK);
+        }
+        sessionAt = 0;
+        return status(address, STATUS_CHANNEL_CLOSED);
+    }
+
+    /**
+     * Array 0 from reset, month 0 is the current month, registers A+, A-, R+, R-
+     */
+    private byte[] energyArray(int array, int tariff) {
+        if (array != 0x00 || tariff > tariffs) {
+            return status(address, STATUS_INVALID);
+        }
+        long active;
+        long reactive;
+        if (tariff == 0) {
+            double total = 0;
+            long reactiveTotal = 0;
+            for (int i = 0; i < TARIFFS; i++) {
+                total += activeImport[i];
+                reactiveTotal += reactiveImport[i];
+            }
+            active = (long) total;
+            reactive = reactiveTotal;
+        } else {
+            active = (long) activeImport[tariff - 1];
+            reactive = reactiveImport[tariff - 1];
+        }
+        return energy(address, active, 0, reactive, NOT_SUPPORTED);
+    }
+
+    /**
+     * Only memory 3, the power profile, is simulated
+     */
+    private byte[] memory(int memory, int start, int length) {
+        if (memory != 0x03 || length == 0 || start + length > profile.length) {
+            return status(address, STATUS_INVALID);
+        }
+        byte[] frame = new byte[length + 3];
+        frame[0] = (byte) address;
+        System.arraycopy(profile, start, frame, 1, length);
+        return frame(frame);
+    }
+
+    private byte[] auxiliaryParameter(int parameter, int bwri) {
+        if (parameter == 0x00) {
+            // serial number and release date 15.06.21
+            return frame(new byte[] { (byte) address, (byte) serialNumber[0], (byte) serialNumber[1],
+                    (byte) serialNumber[2], (byte) serialNumber[3], 15, 6, 21, 0, 0 });
+        }
+        if (parameter == 0x02) {
+            // direct connection without transformers
+            return frame(new byte[] { (byte) address, 0x00, 0x01, 0x00, 0x01, 0, 0 });
+        }
+        if (parameter == 0x12) {
+            // class 0.5S/1.0, 3x230 V, 5 A, constant code 4
+            return frame(new byte[] { (byte) address, (byte) 0xB4, 0x04, (byte) (singlePhase ? 0x80 : 0x00), 0x00, 0x00,
+                    0x00, 0, 0 });
+        }
+        if (parameter == 0x13) {
+            LocalDateTime time = lastProfileTime;
+            return frame(new byte[] { (byte) address, (byte) (lastProfileRecord >> 8), (byte) lastProfileRecord, 0,
+                    bcd(time.getHour()), bcd(time.getMinute()), bcd(time.getDayOfMonth()), bcd(time.getMonthValue()),
+                    bcd(time.getYear() % 100), PROFILE_PERIOD, 0, 0 });
+        }
+        if (parameter == 0x05) {
+            return frame(new byte[] { (byte) address, 0x00, (byte) address, 0, 0 });
+        }
+        if (parameter == 0x11 && bwri >= 0) {
+            int phase = bwri & 0x0F;
+            if (singlePhase && (bwri < 0x10 ? bwri & 0x03 : phase) > 1) {
+                return status(address, STATUS_INVALID);
+            }
+            switch (bwri & 0xF0) {
+                case 0x10:
+                    return phase >= 1 && phase <= 3 ? auxiliary(address, voltage(phase - 1))
+                            : status(address, STATUS_INVALID);
+                case 0x20:
+                    return phase >= 1 && phase <= 3 ? auxiliary(address, current(phase - 1))
+                            : status(address, STATUS_INVALID);
+                case 0x00:
+                    return bwri < 0x0C ? auxiliary(address, power(bwri >> 2, bwri & 0x03))
+                            : status(address, STATUS_INVALID);
+                case 0x30:
+                    return phase <= 3 ? auxiliary(address, powerFactor(phase)) : status(address, STATUS_INVALID);
+                case 0x40:
+                    return phase == 0 ? auxiliary(address, frequency()) : status(address, STATUS_INVALID);
+                default:
+                    return status(address, STATUS_INVALID);
+            }
+        }
+        if (parameter == 0x14 && bwri >= 0) {
+            int[] values = fixed.get(bwri);
+            return values != null ? auxiliary(address, values) : status(address, STATUS_INVALID);
+        }
+        if (parameter == 0x16 && bwri >= 0) {
+            switch (bwri) {
+                case 0x11:
+                    return auxiliary(address, voltage(0), voltage(1), voltage(2));
+                case 0x21:
+                    return auxiliary(address, current(0), current(1), current(2));
+                case 0x00:
+                case 0x04:
+                case 0x08:
+                    int kind = bwri >> 2;
+                    return auxiliary(address, power(kind, 0), power(kind, 1), power(kind, 2), power(kind, 3));
+                case 0x30:
+                    return auxiliary(address, powerFactor(0), powerFactor(1), powerFactor(2), powerFactor(3));
+                default:
+                    return status(address, STATUS_INVALID);
+            }
+        }
+        return status(address, STATUS_INVALID);
+    }
+
+    private double noisy(double value) {
+        return noise > 0 ? value * (1 + noise * random.nextGaussian()) : value;
+    }
+
+    private int voltage(int phase) {
+        return (int) Math.round(noisy(voltage[phase]) * 100);
+    }
+
+    private int current(int phase) {
+        return (int) Math.round(noisy(current[phase]) * 1000);
+    }
+
+    /**
+     * Power in 0.01 W, var or VA, phase 0 is the sum of all phases
+     *
+     * @param kind 0 active, 1 reactive, 2 apparent
+     */
+    private int power(int kind, int phase) {
+        if (phase == 0) {
+            return power(kind, 1) + power(kind, 2) + power(kind, 3);
+        }
+        double apparent = voltage[phase - 1] * current[phase - 1];
+        double factor = kind == 0 ? powerFactor : kind == 1 ? Math.sqrt(1 - powerFactor * powerFactor) : 1;
+        return (int) Math.round(noisy(apparent * factor) * 100);
+    }
+
+    /**
+     * Power factor in 0.001, the same on all phases
+     */
+    private int powerFactor(int phase) {
+        return (int) Math.round(noisy(powerFactor) * 1000);
+    }
+
+    /**
+     * Mains frequency in 0.01 Hz
+     */
+    private int frequency() {
+        return (int) Math.round(noisy(50.0) * 100);
+    }
+
+    private void accumulate(long now) {
+        double hours = (now - lastUpdate) / 3.6e12;
+        lastUpdate = now;
+        double power = 0;
+        for (int phase = 0; phase < 3; phase++) {
+            power += voltage[phase] * current[phase] * powerFactor;
+        }
+        activeImport[0] += power * hours;
+    }
+
+    public static byte[] status(int address, int status) {
+        return frame(new byte[] { (byte) address, (byte) status, 0, 0 });
+    }
+
+    /**
+     * Answer to 0x08 requests: 3 bytes per value, high byte, low byte, middle byte
+     */
+    public static byte[] auxiliary(int address, int... values) {
+        byte[] frame = new byte[values.length * 3 + 3];
+        frame[0] = (byte) address;
+        for (int i = 0; i < values.length; i++) {
+            frame[1 + i * 3] = (byte) (values[i] >> 16);
+            frame[2 + i * 3] = (byte) values[i];
+            frame[3 + i * 3] = (byte) (values[i] >> 8);
+        }
+        return frame(frame);
+    }
+
+    /**
+     * Answer to 0x05 requests: 4 bytes per value in the order 2, 1, 4, 3
+     */
+    public static byte[] energy(int address, long... values) {
+        byte[] frame = new byte[values.length * 4 + 3];
+        frame[0] = (byte) address;
+        for (int i = 0; i < values.length; i++) {
+            frame[1 + i * 4] = (byte) (values[i] >> 16);
+            frame[2 + i * 4] = (byte) (values[i] >> 24);
+            frame[3 + i * 4] = (byte) values[i];
+            frame[4 + i * 4] = (byte) (values[i] >> 8);
+        }
+        return frame(frame);
+    }
+
+    /**
+     * Fills the last two bytes with CRC16
+     */
+    public static byte[] frame(byte[] frame) {
+        int sum = MercuryEnergyMeterCRC16Modbus.compute(frame, 0, frame.length - 2);
+        frame[frame.length - 2] = (byte) sum;
+        frame[frame.length - 1] = (byte) (sum >> 8);
+        return frame;
+    }
+}
@@ -0,0 +1,356 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.io.transport.serial.SerialPort;
+import org.openhab.core.io.transport.serial.SerialPortEvent;
+import org.openhab.core.io.transport.serial.SerialPortEventListener;
+import org.openhab.core.io.transport.serial.SerialPortIdentifier;
+import org.openhab.core.io.transport.serial.SerialPortManager;
+
+/**
+ * The {@link MercuryEnergyMeterSimulator} is an RS485 bus of {@link MercuryEnergyMeterSimulatedMeter}s. It plugs in
+ * behind the bridge as serial port with in-memory streams, see {@link #getSerialPortManager()}, or as a local TCP
+ * gateway, see {@link MercuryEnergyMeterTcpStandIn}. Answer latency, jitter, line time, noise of the readings, a
+ * corruption rate, echo of the request and random bytes before the answer are configurable, all random values come
+ * from the seed.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterSimulator implements Closeable {
+    public static final String PORT_NAME = "simulator";
+    private static final byte[] NO_ANSWER = new byte[0];
+    private static final int BROADCAST_ADDRESS = 0xFE;
+
+    private final MercuryEnergyMeterSimulatedMeter[] meters = new MercuryEnergyMeterSimulatedMeter[256];
+    private final Random random;
+    private final long seed;
+    private volatile long latency;
+    private volatile long jitter;
+    private volatile double corruptionRate;
+    private volatile boolean echo;
+    private volatile double garbageRate;
+    private volatile int portSpeed;
+    private final AtomicInteger transactions = new AtomicInteger();
+    private final AtomicInteger corrupted = new AtomicInteger();
+
+    private final byte[] request = new byte[64];
+    private int requestLength;
+    private byte[] answer = NO_ANSWER;
+    private int readPosition;
+    private volatile @Nullable SerialPortEventListener listener;
+    private @Nullable ScheduledExecutorService delivery;
+
+    private final SerialPortEvent dataAvailable = new SerialPortEvent() {
+        @Override
+        public int getEventType() {
+            return SerialPortEvent.DATA_AVAILABLE;
+        }
+
+        @Override
+        public boolean getNewValue() {
+            return true;
+        }
+    };
+
+    private final InputStream inputStream = new InputStream() {
+        @Override
+        public int read() {
+            synchronized (MercuryEnergyMeterSimulator.this) {
+                return readPosition < answer.length ? answer[readPosition++] & 0xFF : -1;
+            }
+        }
+
+        @Override
+        public int read(byte @Nullable [] b, int off, int len) {
+            synchronized (MercuryEnergyMeterSimulator.this) {
+                int count = Math.min(len, answer.length - readPosition);
+                if (b == null || count <= 0) {
+                    return -1;
+                }
+                System.arraycopy(answer, readPosition, b, off, count);
+                readPosition += count;
+                return count;
+            }
+        }
+
+        @Override
+        public int available() {
+            synchronized (MercuryEnergyMeterSimulator.this) {
+                return answer.length - readPosition;
+            }
+        }
+    };
+
+    private final OutputStream outputStream = new OutputStream() {
+        @Override
+        public void write(int b) {
+            synchronized (MercuryEnergyMeterSimulator.this) {
+                if (requestLength < request.length) {
+                    request[requestLength++] = (byte) b;
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+            byte[] frame;
+            long delay;
+            synchronized (MercuryEnergyMeterSimulator.this) {
+                frame = onLine(Arrays.copyOf(request, requestLength), answer(request, requestLength));
+                delay = getDelay(requestLength, frame.length);
+                requestLength = 0;
+            }
+            if (delay <= 0) {
+                deliver(frame);
+            } else {
+                getDelivery().schedule(() -> deliver(frame), delay, TimeUnit.NANOSECONDS);
+            }
+        }
+    };
+
+    public MercuryEnergyMeterSimulator(long seed) {
+        this.seed = seed;
+        this.random = new Random(seed);
+    }
+
+    public MercuryEnergyMeterSimulatedMeter addMeter(int address) {
+        MercuryEnergyMeterSimulatedMeter meter = new MercuryEnergyMeterSimulatedMeter(address, seed + address);
+        meters[address & 0xFF] = meter;
+        return meter;
+    }
+
+    /**
+     * Adds energy meters with consecutive network addresses
+     */
+    public void addMeters(int firstAddress, int count) {
+        for (int address = firstAddress; address < firstAddress + count; address++) {
+            addMeter(address);
+        }
+    }
+
+    public @Nullable MercuryEnergyMeterSimulatedMeter getMeter(int address) {
+        return meters[address & 0xFF];
+    }
+
+    /**
+     * Time the energy meters need to start answering
+     */
+    public void setLatency(long latency, long jitter, TimeUnit unit) {
+        this.latency = unit.toNanos(latency);
+        this.jitter = unit.toNanos(jitter);
+    }
+
+    /**
+     * Speed of the simulated line, answers take their line time to arrive. 0 delivers answers at once.
+     */
+    public void setPortSpeed(int portSpeed) {
+        this.portSpeed = portSpeed;
+    }
+
+    /**
+     * Relative standard deviation of the instantaneous values of all energy meters, 0.01 is 1 %
+     */
+    public void setNoise(double noise) {
+        for (MercuryEnergyMeterSimulatedMeter meter : meters) {
+            if (meter != null) {
+                meter.setNoise(noise);
+            }
+        }
+    }
+
+    /**
+     * Share of answers with one flipped bit, 0.01 corrupts every hundredth answer
+     */
+    public void setCorruptionRate(double corruptionRate) {
+        this.corruptionRate = corruptionRate;
+    }
+
+    /**
+     * Requests seen on the bus, including the ones nobody answered
+     */
+    /**
+     * Adapter hears its own transmitter, the request comes back before the answer
+     */
+    public void setEcho(boolean echo) {
+        this.echo = echo;
+    }
+
+    /**
+     * Share of answers preceded by 1 to 3 random bytes, like noise after switching the line direction
+     */
+    public void setGarbageRate(double garbageRate) {
+        this.garbageRate = garbageRate;
+    }
+
+    public int getTransactions() {
+        return transactions.get();
+    }
+
+    public int getCorrupted() {
+        return corrupted.get();
+    }
+
+    /**
+     * Answer of the bus to one request. Requests with wrong CRC or unknown network address are not answered, on
+     * broadcast all energy meters answer at once and collide unless there is only one. Requests to address 0xFE are
+     * executed by all energy meters without an answer.
+     */
+    public byte[] answer(byte[] request, int length) {
+        transactions.incrementAndGet();
+        if (length < 4 || !MercuryEnergyMeterCodec.isValid(request, length)) {
+            return NO_ANSWER;
+        }
+        int to = request[0] & 0xFF;
+        byte[] frame;
+        if (to == BROADCAST_ADDRESS) {
+            for (MercuryEnergyMeterSimulatedMeter meter : meters) {
+                if (meter != null) {
+                    meter.answer(request, length);
+                }
+            }
+            return NO_ANSWER;
+        }
+        if (to == 0) {
+            frame = NO_ANSWER;
+            for (MercuryEnergyMeterSimulatedMeter meter : meters) {
+                if (meter != null) {
+                    frame = collide(frame, meter.answer(request, length));
+                }
+            }
+        } else {
+            MercuryEnergyMeterSimulatedMeter meter = meters[to];
+            frame = meter != null ? meter.answer(request, length) : NO_ANSWER;
+        }
+        if (frame.length > 0 && corruptionRate > 0 && random.nextDouble() < corruptionRate) {
+            frame = frame.clone();
+            frame[random.nextInt(frame.length)] ^= (byte) (1 << random.nextInt(8));
+            corrupted.incrementAndGet();
+        }
+        return frame;
+    }
+
+    /**
+     * Bytes the bridge receives after the request: echo, garbage and the answer
+     */
+    private byte[] onLine(byte[] request, byte[] answer) {
+        byte[] garbage = new byte[answer.length > 0 && garbageRate > 0 && random.nextDouble() < garbageRate
+                ? 1 + random.nextInt(3)
+                : 0];
+        random.nextBytes(garbage);
+        byte[] echoed = echo ? request : NO_ANSWER;
+        byte[] frame = new byte[echoed.length + garbage.length + answer.length];
+        System.arraycopy(echoed, 0, frame, 0, echoed.length);
+        System.arraycopy(garbage, 0, frame, echoed.length, garbage.length);
+        System.arraycopy(answer, 0, frame, echoed.length + garbage.length, answer.length);
+        return frame;
+    }
+
+    private static byte[] collide(byte[] first, byte[] second) {
+        if (first.length == 0) {
+            return second;
+        }
+        byte[] frame = new byte[Math.max(first.length, second.length)];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) ((i < first.length ? first[i] : 0) | (i < second.length ? second[i] : 0));
+        }
+        return frame;
+    }
+
+    /**
+     * Time from writing the request to the end of the answer in nanoseconds
+     */
+    public long getDelay(int requestLength, int answerLength) {
+        if (answerLength == 0) {
+            return 0;
+        }
+        long delay = latency;
+        if (jitter > 0) {
+            delay += (long) (random.nextDouble() * jitter);
+        }
+        if (portSpeed > 0) {
+            delay += MercuryEnergyMeterFrameReceiver.transferTime(requestLength + answerLength, portSpeed);
+        }
+        return delay;
+    }
+
+    private void deliver(byte[] frame) {
+        if (frame.length == 0) {
+            return;
+        }
+        synchronized (this) {
+            answer = frame;
+            readPosition = 0;
+        }
+        SerialPortEventListener eventListener = listener;
+        if (eventListener != null) {
+            eventListener.serialEvent(dataAvailable);
+        }
+    }
+
+    private synchronized ScheduledExecutorService getDelivery() {
+        ScheduledExecutorService executor = delivery;
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "simulator-bus");
+                thread.setDaemon(true);
+                return thread;
+            });
+            delivery = executor;
+        }
+        return executor;
+    }
+
+    /**
+     * Serial port manager which knows the single port {@link #PORT_NAME} backed by this simulator
+     */
+    public SerialPortManager getSerialPortManager() throws Exception {
+        SerialPort port = mock(SerialPort.class);
+        when(port.getInputStream()).thenReturn(inputStream);
+        when(port.getOutputStream()).thenReturn(outputStream);
+        doAnswer(invocation -> {
+            listener = invocation.getArgument(0);
+            return null;
+        }).when(port).addEventListener(any());
+        SerialPortIdentifier identifier = mock(SerialPortIdentifier.class);
+        when(identifier.open(anyString(), anyInt())).thenReturn(port);
+        SerialPortManager manager = mock(SerialPortManager.class);
+        when(manager.getIdentifier(PORT_NAME)).thenReturn(identifier);
+        return manager;
+    }
+
+    @Override
+    public synchronized void close() {
+        ScheduledExecutorService executor = delivery;
+        if (executor != null) {
+            executor.shutdownNow();
+            delivery = null;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link MercuryEnergyMeterTcpStandIn} is a local RS485 to Ethernet gateway with the bus of
+ * {@link MercuryEnergyMeterSimulator} behind it. Every received chunk is taken as one request and answered after the
+ * simulated delay.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterTcpStandIn implements Closeable {
+    private final MercuryEnergyMeterSimulator simulator;
+    private final ServerSocket server;
+
+    public MercuryEnergyMeterTcpStandIn(MercuryEnergyMeterSimulator simulator) throws IOException {
+        this.simulator = simulator;
+        this.server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(this::serve, "tcp-standin");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public String getHost() {
+        return server.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    private void serve() {
+        byte[] request = new byte[64];
+        while (!server.isClosed()) {
+            try (Socket socket = server.accept()) {
+                socket.setTcpNoDelay(true);
+                InputStream in = socket.getInputStream();
+                OutputStream out = socket.getOutputStream();
+                int count;
+                while ((count = in.read(request)) > 0) {
+                    byte[] answer = simulator.answer(request, count);
+                    long delay = simulator.getDelay(count, answer.length);
+                    if (delay > 0) {
+                        LockSupport.parkNanos(delay);
+                    }
+                    out.write(answer);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // connection closed by the bridge, wait for the next one
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2010-2021 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.mercuryenergymeter.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.PriorityQueue;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.binding.mercuryenergymeter.internal.MercuryEnergyMeterTransaction.Priority;
+
+/**
+ * The {@link MercuryEnergyMeterTransactionTest} checks the order transactions leave the bus queue in.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class MercuryEnergyMeterTransactionTest {
+    private final PriorityQueue<MercuryEnergyMeterTransaction> queue = new PriorityQueue<>();
+    private long sequence;
+
+    private MercuryEnergyMeterTransaction add(int address, Priority priority, int round) {
+        MercuryEnergyMeterTransaction transaction = new MercuryEnergyMeterTransaction(
+                new int[] { address, 0x08, 0x11, 0x11 }, 6, 111111, priority, round, ++sequence);
+        queue.add(transaction);
+        return transaction;
+    }
+
+    @Test
+    public void higherPriorityFirst() {
+        MercuryEnergyMeterTransaction energy = add(1, Priority.LOW, 1);
+        MercuryEnergyMeterTransaction normal = add(2, Priority.NORMAL, 1);
+        MercuryEnergyMeterTransaction voltage = add(3, Priority.HIGH, 1);
+        assertSame(voltage, queue.poll());
+        assertSame(normal, queue.poll());
+        assertSame(energy, queue.poll());
+    }
+
+    @Test
+    public void busyMeterDoesNotHoldTheLine() {
+        // the first meter queued three requests before the second one queued its first
+        MercuryEnergyMeterTransaction first1 = add(1, Priority.HIGH, 1);
+        MercuryEnergyMeterTransaction first2 = add(1, Priority.HIGH, 2);
+        MercuryEnergyMeterTransaction first3 = add(1, Priority.HIGH, 3);
+        MercuryEnergyMeterTransaction second1 = add(2, Priority.HIGH, 1);
+        MercuryEnergyMeterTransaction second2 = add(2, Priority.HIGH, 2);
+        assertSame(first1, queue.poll());
+        assertSame(second1, queue.poll());
+        assertSame(first2, queue.poll());
+        assertSame(second2, queue.poll());
+        assertSame(first3, queue.poll());
+    }
+
+    @Test
+    public void submissionOrderWithinRound() {
+        MercuryEnergyMeterTransaction first = add(1, Priority.LOW, 1);
+        MercuryEnergyMeterTransaction second = add(2, Priority.LOW, 1);
+        MercuryEnergyMeterTransaction third = add(3, Priority.LOW, 1);
+        assertSame(first, queue.poll());
+        assertSame(second, queue.poll());
+        assertSame(third, queue.poll());
+    }
+}